@@ -0,0 +1,112 @@
+package org.inventivetalent.data.benchmark;
+
+import com.google.gson.JsonObject;
+import org.h2.jdbcx.JdbcDataSource;
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.inventivetalent.data.async.KeyedExecutor;
+import org.inventivetalent.data.file.FileDataProvider;
+import org.inventivetalent.data.mapper.AsyncCacheMapper;
+import org.inventivetalent.data.mapper.AsyncJsonValueMapper;
+import org.inventivetalent.data.mapper.AsyncStringValueMapper;
+import org.inventivetalent.data.mapper.MapMapper;
+import org.inventivetalent.data.sql.SQLDataProvider;
+import org.inventivetalent.data.sqlite.SQLiteDataProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Creates the providers which are benchmarked, backed by a temporary directory
+ */
+public class Backends {
+
+	static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+
+	final Path dir;
+
+	public Backends() throws IOException {
+		this.dir = Files.createTempDirectory("data-api-benchmark");
+	}
+
+	public FileDataProvider file() {
+		File file = dir.resolve("file").toFile();
+		file.mkdirs();
+		return new FileDataProvider(file);
+	}
+
+	public SQLiteDataProvider sqlite() throws SQLException {
+		return new SQLiteDataProvider(DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("benchmark.db")), "benchmark");
+	}
+
+	/**
+	 * Embedded H2 in MySQL mode, accessed through the pooled {@link javax.sql.DataSource} constructor
+	 */
+	public SQLDataProvider h2() {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:benchmark" + DATABASE_COUNTER.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		return new SQLDataProvider(dataSource, "benchmark");
+	}
+
+	/**
+	 * @param backend one of <code>file</code>, <code>sqlite</code>, <code>h2</code>, <code>map</code> or <code>cache</code> (an {@link AsyncCacheMapper} in front of SQLite)
+	 */
+	public AsyncDataProvider<String> string(String backend) throws SQLException {
+		switch (backend) {
+			case "file":
+				return AsyncStringValueMapper.file(file());
+			case "sqlite":
+				return AsyncStringValueMapper.sqlite(sqlite());
+			case "h2":
+				return AsyncStringValueMapper.sql(h2());
+			case "map":
+				return MapMapper.async(new ConcurrentHashMap<>());
+			case "cache":
+				return AsyncCacheMapper.create(AsyncStringValueMapper.sqlite(sqlite()));
+			default:
+				throw new IllegalArgumentException("Unknown backend " + backend);
+		}
+	}
+
+	/**
+	 * Uses the SQL JSON mapper for <code>h2</code>, otherwise see {@link #string(String)}
+	 */
+	public AsyncDataProvider<JsonObject> json(String backend) throws SQLException {
+		switch (backend) {
+			case "file":
+				return AsyncJsonValueMapper.file(file());
+			case "sqlite":
+				return AsyncJsonValueMapper.sqlite(sqlite());
+			case "h2":
+				return AsyncJsonValueMapper.sql(h2());
+			default:
+				throw new IllegalArgumentException("Unknown backend " + backend);
+		}
+	}
+
+	/**
+	 * Stops the provider's executor threads
+	 */
+	public static void shutdown(AsyncDataProvider<?> provider) {
+		if (provider.getExecutor() instanceof KeyedExecutor) {
+			((KeyedExecutor) provider.getExecutor()).shutdown();
+		} else if (provider.getExecutor() instanceof ExecutorService) {
+			((ExecutorService) provider.getExecutor()).shutdown();
+		}
+	}
+
+	public void delete() throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+}
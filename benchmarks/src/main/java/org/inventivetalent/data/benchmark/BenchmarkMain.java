@@ -0,0 +1,22 @@
+package org.inventivetalent.data.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with JSON results (<code>jmh-result.json</code>) unless another result format is passed with <code>-rf</code>
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		if (!arguments.contains("-rf")) {
+			arguments.addAll(0, Arrays.asList("-rf", "json"));
+		}
+		Main.main(arguments.toArray(new String[0]));
+	}
+
+}
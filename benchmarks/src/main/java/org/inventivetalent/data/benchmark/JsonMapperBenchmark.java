@@ -0,0 +1,90 @@
+package org.inventivetalent.data.benchmark;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the {@link org.inventivetalent.data.mapper.AsyncJsonValueMapper} views, including the JSON conversion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMapperBenchmark {
+
+	@Param({ "file", "sqlite", "h2" })
+	public String backend;
+
+	@Param("1000")
+	public int keyCount;
+
+	@Param("100")
+	public int batchSize;
+
+	Backends                      backends;
+	AsyncDataProvider<JsonObject> provider;
+	JsonObject                    value;
+	String[]                      keys;
+	Map<String, JsonObject>       batch;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		backends = new Backends();
+		provider = backends.json(backend);
+		value = new JsonParser().parse(StringProviderBenchmark.VALUE).getAsJsonObject();
+
+		keys = new String[keyCount];
+		Map<String, JsonObject> entries = new HashMap<>();
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = "key" + i;
+			entries.put(keys[i], value);
+		}
+		provider.putAllAsync(entries).toCompletableFuture().join();
+
+		batch = new HashMap<>();
+		for (int i = 0; i < batchSize; i++) {
+			batch.put(keys[i % keyCount], value);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Backends.shutdown(provider);
+		backends.delete();
+	}
+
+	String randomKey() {
+		return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+	}
+
+	@Benchmark
+	public JsonObject get() {
+		return provider.getAsync(randomKey()).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public void put() {
+		provider.putAsync(randomKey(), value).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public void putAll() {
+		provider.putAllAsync(batch).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public Map<String, JsonObject> entries() {
+		return provider.entriesAsync().toCompletableFuture().join();
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.inventivetalent.data.benchmark;
+
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the string providers, through their {@link org.inventivetalent.data.mapper.AsyncStringValueMapper} views
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringProviderBenchmark {
+
+	static final String VALUE = "{\"name\":\"benchmark\",\"count\":42,\"tags\":[\"foo\",\"bar\"],\"nested\":{\"enabled\":true}}";
+
+	@Param({ "file", "sqlite", "h2", "map", "cache" })
+	public String backend;
+
+	@Param("1000")
+	public int keyCount;
+
+	@Param("100")
+	public int batchSize;
+
+	Backends                  backends;
+	AsyncDataProvider<String> provider;
+	String[]                  keys;
+	Map<String, String>       batch;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		backends = new Backends();
+		provider = backends.string(backend);
+
+		keys = new String[keyCount];
+		Map<String, String> entries = new HashMap<>();
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = "key" + i;
+			entries.put(keys[i], VALUE);
+		}
+		provider.putAllAsync(entries).toCompletableFuture().join();
+
+		batch = new HashMap<>();
+		for (int i = 0; i < batchSize; i++) {
+			batch.put(keys[i % keyCount], VALUE);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Backends.shutdown(provider);
+		backends.delete();
+	}
+
+	String randomKey() {
+		return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+	}
+
+	@Benchmark
+	public String get() {
+		return provider.getAsync(randomKey()).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public void put() {
+		provider.putAsync(randomKey(), VALUE).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public void putAll() {
+		provider.putAllAsync(batch).toCompletableFuture().join();
+	}
+
+	@Benchmark
+	public Map<String, String> entries() {
+		return provider.entriesAsync().toCompletableFuture().join();
+	}
+
+}
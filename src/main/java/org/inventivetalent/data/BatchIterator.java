@@ -0,0 +1,73 @@
+package org.inventivetalent.data;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator which loads its elements lazily in batches, e.g. from a database cursor
+ *
+ * @param <T> element type
+ */
+public abstract class BatchIterator<T> implements Iterator<T>, AutoCloseable {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private Iterator<T> current = Collections.emptyIterator();
+	private boolean     closed;
+
+	/**
+	 * Loads the next batch. An empty batch does not end the iteration.
+	 *
+	 * @return the next batch of elements, or <code>null</code> if there are no more elements
+	 */
+	@Nullable
+	protected abstract Collection<T> nextBatch();
+
+	/**
+	 * Releases any resources held by the iterator, called once when the iteration ends or the iterator is closed
+	 */
+	protected void release() {
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (closed) { return false; }
+			Collection<T> batch = nextBatch();
+			if (batch == null) {
+				close();
+				return false;
+			}
+			current = batch.iterator();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	@Override
+	public final void close() {
+		if (!closed) {
+			closed = true;
+			release();
+		}
+	}
+
+	/**
+	 * @return a sequential stream over the remaining elements, which closes this iterator when it is closed
+	 */
+	@Nonnull
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+	}
+
+}
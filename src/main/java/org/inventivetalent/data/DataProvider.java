@@ -3,6 +3,7 @@ package org.inventivetalent.data;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 public interface DataProvider<V> {
@@ -14,6 +15,22 @@ public interface DataProvider<V> {
 	@Nullable
 	V get(@Nonnull String key);
 
+	/**
+	 * @param keys keys to look up
+	 * @return map of the found values, keys without a value are not included
+	 */
+	@Nonnull
+	default Map<String, V> getAll(@Nonnull Collection<String> keys) {
+		Map<String, V> map = new HashMap<>();
+		for (String key : keys) {
+			V value = get(key);
+			if (value != null) {
+				map.put(key, value);
+			}
+		}
+		return map;
+	}
+
 	boolean contains(@Nonnull String key);
 
 	void remove(@Nonnull String key);
@@ -1,14 +1,22 @@
 package org.inventivetalent.data.async;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
 
 public abstract class AbstractAsyncDataProvider<V> implements AsyncDataProvider<V> {
 
 	private Executor executor;
 
 	public AbstractAsyncDataProvider() {
-		this.executor = Executors.newSingleThreadExecutor();
+		this.executor = new BoundedExecutor();
 	}
 
 	public AbstractAsyncDataProvider(Executor executor) {
@@ -23,8 +31,131 @@ public abstract class AbstractAsyncDataProvider<V> implements AsyncDataProvider<
 		executor.execute(runnable);
 	}
 
+	/**
+	 * Passes the key on if the executor is a {@link KeyedExecutor}, e.g. to run the task on the key's lane of a {@link StripedExecutor}
+	 */
+	@Override
+	public void execute(@Nonnull String key, Runnable runnable) {
+		if (executor instanceof KeyedExecutor) {
+			((KeyedExecutor) executor).execute(key, runnable);
+		} else {
+			execute(runnable);
+		}
+	}
+
 	@Override
 	public Executor getExecutor() {
 		return executor;
 	}
+
+	/**
+	 * Runs the supplier on the provider's executor
+	 *
+	 * @param supplier supplier to run
+	 * @param <T>      result type
+	 * @return a future completed with the supplier's result, or exceptionally if it throws
+	 */
+	protected <T> CompletableFuture<T> supply(@Nonnull Supplier<T> supplier) {
+		try {
+			return CompletableFuture.supplyAsync(supplier, this::execute);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Runs the supplier on the provider's executor, as a task for the given key
+	 *
+	 * @see #execute(String, Runnable)
+	 */
+	protected <T> CompletableFuture<T> supply(@Nonnull String key, @Nonnull Supplier<T> supplier) {
+		try {
+			return CompletableFuture.supplyAsync(supplier, runnable -> execute(key, runnable));
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Runs the runnable on the provider's executor
+	 *
+	 * @param runnable runnable to run
+	 * @return a future completed once the runnable has finished, or exceptionally if it throws
+	 */
+	protected CompletableFuture<Void> run(@Nonnull Runnable runnable) {
+		try {
+			return CompletableFuture.runAsync(runnable, this::execute);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	@Override
+	public void getAll(@Nonnull Collection<String> keys, @Nonnull DataCallback<Map<String, V>> callback) {
+		provide(getAllAsync(keys), callback);
+	}
+
+	/**
+	 * Runs the runnable on the provider's executor, as a task for the given key
+	 *
+	 * @see #execute(String, Runnable)
+	 */
+	protected CompletableFuture<Void> run(@Nonnull String key, @Nonnull Runnable runnable) {
+		try {
+			return CompletableFuture.runAsync(runnable, command -> execute(key, command));
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Runs a write of the given key on the provider's executor.
+	 * Unlike {@link #run(String, Runnable)}, a {@link KeyedExecutor} may coalesce it with a pending write for the same key.
+	 *
+	 * @see KeyedExecutor#write(Object, Runnable)
+	 */
+	protected CompletableFuture<Void> write(@Nonnull String key, @Nonnull Runnable runnable) {
+		if (!(executor instanceof KeyedExecutor)) {
+			return run(key, runnable);
+		}
+		try {
+			return ((KeyedExecutor) executor).write(key, runnable);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * @return the number of tasks waiting in the executor's queue, or <code>-1</code> if the executor does not expose it
+	 */
+	public int getQueueDepth() {
+		if (executor instanceof KeyedExecutor) {
+			return ((KeyedExecutor) executor).getQueueDepth();
+		}
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		return -1;
+	}
+
+	/**
+	 * Passes the result of the stage to the callback.
+	 * Failures are forwarded to the completing thread's {@link Thread.UncaughtExceptionHandler}, the same way an exception thrown by a plain executor task would be.
+	 *
+	 * @param stage    stage to listen to
+	 * @param callback callback to call with the result, or <code>null</code> to only report failures
+	 * @param <T>      result type
+	 */
+	protected <T> void provide(@Nonnull CompletionStage<T> stage, @Nullable DataCallback<T> callback) {
+		stage.whenComplete((value, throwable) -> {
+			if (throwable != null) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+				return;
+			}
+			if (callback != null) {
+				callback.provide(value);
+			}
+		});
+	}
 }
@@ -1,9 +1,17 @@
 package org.inventivetalent.data.async;
 
+import org.inventivetalent.data.BatchIterator;
+
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public interface AsyncDataProvider<V> {
 
@@ -17,6 +25,22 @@ public interface AsyncDataProvider<V> {
 
 	void get(@Nonnull String key, @Nonnull DataCallback<V> callback);
 
+	/**
+	 * @param keys     keys to look up
+	 * @param callback callback for the map of found values, keys without a value are not included.
+	 *                 Failures are forwarded to the completing thread's {@link Thread.UncaughtExceptionHandler} instead.
+	 */
+	default void getAll(@Nonnull Collection<String> keys, @Nonnull DataCallback<Map<String, V>> callback) {
+		getAllAsync(keys).whenComplete((map, throwable) -> {
+			if (throwable != null) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+				return;
+			}
+			callback.provide(map);
+		});
+	}
+
 	void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback);
 
 	void remove(@Nonnull String key, @Nonnull DataCallback<V> callback);
@@ -29,10 +53,142 @@ public interface AsyncDataProvider<V> {
 
 	void size(@Nonnull DataCallback<Integer> callback);
 
+	/*
+	 * CompletionStage variants
+	 *
+	 * The defaults below only bridge the callback methods, implementations should override them where the backend can complete the stage directly.
+	 * The put acknowledgements of the defaults assume that the executor runs tasks in the order they were submitted.
+	 */
+
+	@Nonnull
+	default CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull V value) {
+		put(key, value);
+		return acknowledge();
+	}
+
+	@Nonnull
+	default CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
+		put(key, valueCallable);
+		return acknowledge();
+	}
+
+	@Nonnull
+	default CompletionStage<Void> putAllAsync(@Nonnull Map<String, V> map) {
+		putAll(map);
+		return acknowledge();
+	}
+
+	@Nonnull
+	default CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, V>> mapCallable) {
+		putAll(mapCallable);
+		return acknowledge();
+	}
+
+	@Nonnull
+	default CompletionStage<V> getAsync(@Nonnull String key) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		get(key, future::complete);
+		return future;
+	}
+
+	@Nonnull
+	default CompletionStage<Map<String, V>> getAllAsync(@Nonnull Collection<String> keys) {
+		Map<String, V> map = new ConcurrentHashMap<>();
+		List<CompletableFuture<?>> futures = new ArrayList<>(keys.size());
+		for (String key : keys) {
+			futures.add(getAsync(key).thenAccept(value -> {
+				if (value != null) {
+					map.put(key, value);
+				}
+			}).toCompletableFuture());
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> map);
+	}
+
+	@Nonnull
+	default CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		contains(key, future::complete);
+		return future;
+	}
+
+	@Nonnull
+	default CompletionStage<V> removeAsync(@Nonnull String key) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		remove(key, future::complete);
+		return future;
+	}
+
+	@Nonnull
+	default CompletionStage<Collection<String>> keysAsync() {
+		CompletableFuture<Collection<String>> future = new CompletableFuture<>();
+		keys(future::complete);
+		return future;
+	}
+
+	@Nonnull
+	default CompletionStage<Map<String, V>> entriesAsync() {
+		CompletableFuture<Map<String, V>> future = new CompletableFuture<>();
+		entries(future::complete);
+		return future;
+	}
+
+	@Nonnull
+	default CompletionStage<Integer> sizeAsync() {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		size(future::complete);
+		return future;
+	}
+
+	/*
+	 * Streaming iteration
+	 *
+	 * The returned streams load their elements lazily in batches of the given size and have to be closed to release any open cursors.
+	 * Implementations may load the batches on the provider's executor, so the streams must not be consumed from within it.
+	 * The defaults below load everything at once.
+	 */
+
+	@Nonnull
+	default Stream<String> streamKeys() {
+		return streamKeys(BatchIterator.DEFAULT_BATCH_SIZE);
+	}
+
+	@Nonnull
+	default Stream<String> streamKeys(int batchSize) {
+		return keysAsync().toCompletableFuture().join().stream();
+	}
+
+	@Nonnull
+	default Stream<Map.Entry<String, V>> streamEntries() {
+		return streamEntries(BatchIterator.DEFAULT_BATCH_SIZE);
+	}
+
+	@Nonnull
+	default Stream<Map.Entry<String, V>> streamEntries(int batchSize) {
+		return entriesAsync().toCompletableFuture().join().entrySet().stream();
+	}
+
+	/**
+	 * @return a stage which completes once all previously submitted tasks have been run by the executor
+	 */
+	@Nonnull
+	default CompletionStage<Void> acknowledge() {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		execute(() -> future.complete(null));
+		return future;
+	}
+
 	default void execute(Runnable runnable) {
 		getExecutor().execute(runnable);
 	}
 
+	/**
+	 * Runs a task which only touches the given key, allowing key-aware executors to keep the order of operations per key
+	 */
+	default void execute(@Nonnull String key, Runnable runnable) {
+		execute(runnable);
+	}
+
 	default Executor getExecutor() {
 		return null;
 	}
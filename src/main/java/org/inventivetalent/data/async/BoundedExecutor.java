@@ -0,0 +1,191 @@
+package org.inventivetalent.data.async;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Single-threaded executor with a bounded queue.
+ * The {@link OverflowPolicy} decides what happens to tasks submitted while the queue is full.
+ */
+public class BoundedExecutor implements KeyedExecutor {
+
+	public enum OverflowPolicy {
+		/**
+		 * Block the submitting thread until there is space in the queue
+		 */
+		BLOCK,
+		/**
+		 * Run the task on the submitting thread. Note that the task is then no longer ordered with the queued tasks.
+		 */
+		CALLER_RUNS,
+		/**
+		 * Pass a {@link RejectedExecutionException} to the rejection callback and throw it
+		 */
+		REJECT,
+		/**
+		 * Replace a queued write for the same key with the new one, dropping the old value.
+		 * Only writes which no other task for the same key, or without a key, was queued after are replaced, so e.g. a remove between two puts is kept in order.
+		 * Tasks which cannot be coalesced block.
+		 */
+		COALESCE
+	}
+
+	private final BlockingQueue<Runnable>                  queue;
+	private final ThreadPoolExecutor                       executor;
+	private final OverflowPolicy                           policy;
+	private final DataCallback<RejectedExecutionException> rejectionCallback;
+	private final Map<Object, WriteTask>                   pendingWrites = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an unbounded executor, equivalent to {@link Executors#newSingleThreadExecutor()}
+	 */
+	public BoundedExecutor() {
+		this(Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+	}
+
+	public BoundedExecutor(int capacity, @Nonnull OverflowPolicy policy) {
+		this(capacity, policy, null);
+	}
+
+	public BoundedExecutor(int capacity, @Nonnull OverflowPolicy policy, @Nullable DataCallback<RejectedExecutionException> rejectionCallback) {
+		this(capacity, policy, rejectionCallback, Executors.defaultThreadFactory());
+	}
+
+	public BoundedExecutor(int capacity, @Nonnull OverflowPolicy policy, @Nullable DataCallback<RejectedExecutionException> rejectionCallback, @Nonnull ThreadFactory threadFactory) {
+		this.queue = new LinkedBlockingQueue<>(capacity);
+		this.policy = policy;
+		this.rejectionCallback = rejectionCallback;
+		this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, this.queue, threadFactory, this::overflow);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs a task which may touch any key, so no queued write is replaced by later writes anymore
+	 */
+	@Override
+	public void execute(@Nonnull Runnable command) {
+		if (!pendingWrites.isEmpty()) {
+			pendingWrites.clear();
+		}
+		executor.execute(command);
+	}
+
+	/**
+	 * Runs a task for the key, so a queued write of the key is not replaced by later writes anymore
+	 */
+	@Override
+	public void execute(@Nullable Object key, @Nonnull Runnable command) {
+		if (key == null) {
+			execute(command);
+			return;
+		}
+		pendingWrites.remove(key);
+		executor.execute(command);
+	}
+
+	@Nonnull
+	@Override
+	public CompletableFuture<Void> write(@Nonnull Object key, @Nonnull Runnable command) {
+		if (policy != OverflowPolicy.COALESCE) {
+			return CompletableFuture.runAsync(command, this);
+		}
+		if (queue.remainingCapacity() == 0) {
+			WriteTask pending = pendingWrites.get(key);
+			if (pending != null && pending.replace(command)) {
+				return pending.future;
+			}
+		}
+		WriteTask task = new WriteTask(key, command);
+		pendingWrites.put(key, task);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			pendingWrites.remove(key, task);
+			throw e;
+		}
+		return task.future;
+	}
+
+	void overflow(Runnable command, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("Executor has been shut down");
+		}
+		switch (policy) {
+			case CALLER_RUNS:
+				command.run();
+				break;
+			case REJECT:
+				RejectedExecutionException exception = new RejectedExecutionException("Queue is full (" + queue.size() + " tasks)");
+				if (rejectionCallback != null) {
+					rejectionCallback.provide(exception);
+				}
+				throw exception;
+			case BLOCK:
+			case COALESCE:
+			default:
+				try {
+					queue.put(command);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException(e);
+				}
+				break;
+		}
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getRemainingCapacity() {
+		return queue.remainingCapacity();
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	class WriteTask implements Runnable {
+
+		final Object                  key;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		Runnable command;
+		boolean  started;
+
+		WriteTask(Object key, Runnable command) {
+			this.key = key;
+			this.command = command;
+		}
+
+		synchronized boolean replace(Runnable command) {
+			if (started) { return false; }
+			this.command = command;
+			return true;
+		}
+
+		@Override
+		public void run() {
+			Runnable command;
+			synchronized (this) {
+				started = true;
+				command = this.command;
+			}
+			pendingWrites.remove(key, this);
+			try {
+				command.run();
+				future.complete(null);
+			} catch (Throwable throwable) {
+				future.completeExceptionally(throwable);
+			}
+		}
+	}
+
+}
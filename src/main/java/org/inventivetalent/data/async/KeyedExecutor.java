@@ -0,0 +1,39 @@
+package org.inventivetalent.data.async;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor which is aware of the key a task operates on
+ */
+public interface KeyedExecutor extends Executor {
+
+	/**
+	 * Runs a task which only touches the given key
+	 *
+	 * @param key     key of the task, or <code>null</code> if the task is not bound to a key
+	 * @param command task to run
+	 */
+	void execute(@Nullable Object key, @Nonnull Runnable command);
+
+	/**
+	 * Runs a write for the given key.
+	 * Depending on the executor, a pending write for the same key may be replaced by this one instead of queueing both.
+	 *
+	 * @param key     key which is written
+	 * @param command write to run
+	 * @return a future completed once the write (or the write replacing it) has finished
+	 */
+	@Nonnull
+	CompletableFuture<Void> write(@Nonnull Object key, @Nonnull Runnable command);
+
+	/**
+	 * @return number of tasks waiting to be run
+	 */
+	int getQueueDepth();
+
+	void shutdown();
+
+}
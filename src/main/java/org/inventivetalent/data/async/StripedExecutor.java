@@ -0,0 +1,158 @@
+package org.inventivetalent.data.async;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor with a fixed number of serial lanes.
+ * Tasks submitted for a key always run on the same lane, so operations on one key keep their order while unrelated keys run in parallel.
+ * Tasks submitted without a key, e.g. bulk writes, are a barrier across all lanes: they run once the tasks submitted to any lane before them have finished,
+ * and the lanes wait for them before running later tasks. Such tasks must not wait for other tasks of the executor.
+ * <p>
+ * Pass an instance to a provider's {@link Executor} constructor to use it; the backend has to be safe for concurrent access.
+ */
+public class StripedExecutor implements KeyedExecutor {
+
+	private final BoundedExecutor[] lanes;
+	private final AtomicInteger     next        = new AtomicInteger();
+	// Keeps barriers in the same order on all lanes
+	private final Object            barrierLock = new Object();
+
+	public StripedExecutor(int lanes) {
+		this(lanes, Executors.defaultThreadFactory());
+	}
+
+	public StripedExecutor(int lanes, @Nonnull ThreadFactory threadFactory) {
+		this(lanes, Integer.MAX_VALUE, BoundedExecutor.OverflowPolicy.BLOCK, null, threadFactory);
+	}
+
+	/**
+	 * @param lanes             number of lanes
+	 * @param laneCapacity      maximum number of queued tasks per lane
+	 * @param policy            policy for tasks submitted to a full lane
+	 * @param rejectionCallback callback for rejected tasks, see {@link BoundedExecutor.OverflowPolicy#REJECT}
+	 * @param threadFactory     factory for the lane threads
+	 */
+	public StripedExecutor(int lanes, int laneCapacity, @Nonnull BoundedExecutor.OverflowPolicy policy, @Nullable DataCallback<RejectedExecutionException> rejectionCallback, @Nonnull ThreadFactory threadFactory) {
+		if (lanes < 1) {
+			throw new IllegalArgumentException("lanes must be at least 1");
+		}
+		this.lanes = new BoundedExecutor[lanes];
+		for (int i = 0; i < lanes; i++) {
+			this.lanes[i] = new BoundedExecutor(laneCapacity, policy, rejectionCallback, threadFactory);
+		}
+	}
+
+	/**
+	 * Runs the task on the key's lane, or as a barrier across all lanes if the key is <code>null</code>
+	 */
+	@Override
+	public void execute(@Nullable Object key, @Nonnull Runnable command) {
+		if (key == null) {
+			execute(command);
+			return;
+		}
+		getLane(key).execute(command);
+	}
+
+	/**
+	 * Runs the task as a barrier across all lanes
+	 */
+	@Override
+	public void execute(@Nonnull Runnable command) {
+		if (lanes.length == 1) {
+			lanes[0].execute(command);
+			return;
+		}
+		Barrier barrier = new Barrier(command);
+		synchronized (barrierLock) {
+			try {
+				for (BoundedExecutor lane : lanes) {
+					lane.execute(barrier);
+				}
+			} catch (RuntimeException e) {
+				// Releases the lanes which already reached it, without running the task
+				barrier.done.countDown();
+				throw e;
+			}
+		}
+	}
+
+	@Nonnull
+	@Override
+	public CompletableFuture<Void> write(@Nonnull Object key, @Nonnull Runnable command) {
+		return getLane(key).write(key, command);
+	}
+
+	/**
+	 * @param key key to get the lane for, or <code>null</code> for the next lane in round-robin order
+	 * @return the lane's executor
+	 */
+	@Nonnull
+	public BoundedExecutor getLane(@Nullable Object key) {
+		if (key == null) {
+			return lanes[Math.floorMod(next.getAndIncrement(), lanes.length)];
+		}
+		int hash = key.hashCode();
+		return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for (BoundedExecutor lane : lanes) {
+			depth += lane.getQueueDepth();
+		}
+		return depth;
+	}
+
+	@Override
+	public void shutdown() {
+		for (BoundedExecutor lane : lanes) {
+			lane.shutdown();
+		}
+	}
+
+	/**
+	 * Submitted to every lane, the last lane to reach it runs the task while the others wait
+	 */
+	class Barrier implements Runnable {
+
+		final Runnable       command;
+		final AtomicInteger  arrived = new AtomicInteger();
+		final CountDownLatch done    = new CountDownLatch(1);
+
+		Barrier(Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			if (arrived.incrementAndGet() < lanes.length) {
+				try {
+					done.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+			try {
+				command.run();
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+}
@@ -6,10 +6,13 @@ import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.async.DataCallback;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
@@ -43,7 +46,66 @@ public class EbeanDataProvider<V extends KeyBean> extends AbstractAsyncDataProvi
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull V value) {
-		execute(() -> {
+		provide(putAsync(key, value), null);
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
+		provide(putAsync(key, valueCallable), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull Map<String, V> map) {
+		provide(putAllAsync(map), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull DataCallable<Map<String, V>> mapCallable) {
+		provide(putAllAsync(mapCallable), null);
+	}
+
+	@Override
+	public void get(@Nonnull String key, @Nonnull DataCallback<V> callback) {
+		provide(getAsync(key), callback);
+	}
+
+	@Override
+	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
+		provide(containsAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key, @Nonnull DataCallback<V> callback) {
+		provide(removeAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key) {
+		execute(key, () -> {
+			V value = getDatabase().find(beanClass).where().eq("key", key).findUnique();
+			if (value != null) { getDatabase().delete(value); }
+		});
+	}
+
+	@Override
+	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
+		provide(keysAsync(), callback);
+	}
+
+	@Override
+	public void entries(@Nonnull DataCallback<Map<String, V>> callback) {
+		provide(entriesAsync(), callback);
+	}
+
+	@Override
+	public void size(@Nonnull DataCallback<Integer> callback) {
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull V value) {
+		return write(key, () -> {
 			V entry;
 			boolean exists = (entry = getDatabase().find(beanClass).where().eq("key", key).findUnique()) != null;
 
@@ -66,9 +128,10 @@ public class EbeanDataProvider<V extends KeyBean> extends AbstractAsyncDataProvi
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void put(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
-		execute(() -> {
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
+		return write(key, () -> {
 			V entry;
 			boolean exists = (entry = getDatabase().find(beanClass).where().eq("key", key).findUnique()) != null;
 			entry = valueCallable.provide();
@@ -81,9 +144,10 @@ public class EbeanDataProvider<V extends KeyBean> extends AbstractAsyncDataProvi
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void putAll(@Nonnull Map<String, V> map) {
-		execute(() -> {
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, V> map) {
+		return run(() -> {
 			for (Map.Entry<String, V> mEntry : map.entrySet()) {
 				V entry;
 				boolean exists = (entry = getDatabase().find(beanClass).where().eq("key", mEntry.getKey()).findUnique()) != null;
@@ -98,9 +162,10 @@ public class EbeanDataProvider<V extends KeyBean> extends AbstractAsyncDataProvi
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void putAll(@Nonnull DataCallable<Map<String, V>> mapCallable) {
-		execute(() -> {
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, V>> mapCallable) {
+		return run(() -> {
 			for (Map.Entry<String, V> mEntry : mapCallable.provide().entrySet()) {
 				V entry;
 				boolean exists = (entry = getDatabase().find(beanClass).where().eq("key", mEntry.getKey()).findUnique()) != null;
@@ -115,56 +180,66 @@ public class EbeanDataProvider<V extends KeyBean> extends AbstractAsyncDataProvi
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void get(@Nonnull String key, @Nonnull DataCallback<V> callback) {
-		execute(() -> callback.provide(getDatabase().find(beanClass).where().eq("key", key).findUnique()));
+	public CompletionStage<V> getAsync(@Nonnull String key) {
+		return supply(key, () -> getDatabase().find(beanClass).where().eq("key", key).findUnique());
 	}
 
+	@Nonnull
 	@Override
-	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
-		execute(() -> callback.provide(getDatabase().find(beanClass).where().eq("key", key).findRowCount() > 0));
+	public CompletionStage<Map<String, V>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		return supply(() -> {
+			Map<String, V> map = new HashMap<>();
+			for (V entry : getDatabase().find(beanClass).where().in("key", keyList).findList()) {
+				map.put(entry.getKey(), entry);
+			}
+			return map;
+		});
 	}
 
+	@Nonnull
 	@Override
-	public void remove(@Nonnull String key, @Nonnull DataCallback<V> callback) {
-		execute(() -> {
-			V value = getDatabase().find(beanClass).where().eq("key", key).findUnique();
-			if (value != null) { getDatabase().delete(value); }
-			callback.provide(value);
-		});
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> getDatabase().find(beanClass).where().eq("key", key).findRowCount() > 0);
 	}
 
+	@Nonnull
 	@Override
-	public void remove(@Nonnull String key) {
-		execute(() -> {
+	public CompletionStage<V> removeAsync(@Nonnull String key) {
+		return supply(key, () -> {
 			V value = getDatabase().find(beanClass).where().eq("key", key).findUnique();
 			if (value != null) { getDatabase().delete(value); }
+			return value;
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
-		execute(() -> {
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(() -> {
 			Set<V> entries = getDatabase().find(beanClass).select("key").findSet();
-			Set<String> keys = entries.stream().map(V::getKey).collect(Collectors.toSet());
-			callback.provide(keys);
+			return entries.stream().map(V::getKey).collect(Collectors.toSet());
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void entries(@Nonnull DataCallback<Map<String, V>> callback) {
-		execute(() -> {
+	public CompletionStage<Map<String, V>> entriesAsync() {
+		return supply(() -> {
 			Set<V> entries = getDatabase().find(beanClass).findSet();
 			Map<String, V> map = new HashMap<>();
 			for (V entry : entries) {
 				map.put(entry.getKey(), entry);
 			}
-			callback.provide(map);
+			return map;
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void size(@Nonnull DataCallback<Integer> callback) {
-		execute(() -> callback.provide(getDatabase().find(beanClass).findRowCount()));
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(() -> getDatabase().find(beanClass).findRowCount());
 	}
 }
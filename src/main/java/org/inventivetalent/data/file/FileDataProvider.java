@@ -9,15 +9,54 @@ import org.inventivetalent.data.async.DataCallback;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Stores each value in its own file, named after the key.
+ * The keys are listed once when they are first needed and kept in memory afterwards, so {@link #contains(String)}, {@link #keys()} and {@link #size()} don't touch the disk.
+ * <p>
+ * By default the files are placed directly in the directory. With {@link #setSharded(boolean)} they are spread over 256 subdirectories by the key's hash,
+ * and the file names are encoded so any key is a valid file name.
+ * <p>
+ * Values are written in place by default, so a crash during a write can leave a partial value. With {@link #setDurable(boolean)} they are written to temp files
+ * which replace the key's file once they are on disk, see {@link GroupCommit}.
+ * <p>
+ * Values are stored as UTF-8 and each file is read in a single call. With {@link #setAsyncReads(boolean)}, {@link #getAsync(String)} reads through an
+ * {@link AsynchronousFileChannel} instead of on the provider's executor, and with {@link #setParallelism(int)} {@link #entries()} reads the files on a fork-join pool.
+ */
 public class FileDataProvider extends AbstractAsyncDataProvider<String> implements AsyncDataProvider<String>, DataProvider<String> {
 
-	private final File dir;
+	public static final long DEFAULT_COMMIT_INTERVAL = 5;
+
+	static final char[] HEX         = "0123456789abcdef".toCharArray();
+	static final String TEMP_SUFFIX = "~tmp";
+
+	private final    File         dir;
+	private final    AtomicLong   tempCounter    = new AtomicLong();
+	private          boolean      sharded;
+	private          long         commitInterval = DEFAULT_COMMIT_INTERVAL;
+	private          boolean      asyncReads;
+	private          int          parallelism    = 1;
+	private volatile Set<String>  index;
+	private volatile GroupCommit  groupCommit;
+	private volatile ForkJoinPool pool;
+	private          FileWatcher  watcher;
 
 	public FileDataProvider(File dir) {
 		this.dir = dir;
@@ -28,34 +67,379 @@ public class FileDataProvider extends AbstractAsyncDataProvider<String> implemen
 		this.dir = dir;
 	}
 
-	File getFile(String name) {
-		File file = new File(this.dir, name);
+	/**
+	 * Spreads the files over subdirectories named after the low byte of the key's hash, and encodes the file names with {@link #encode(String)}.
+	 * Files written with the other layout are not moved.
+	 */
+	public FileDataProvider setSharded(boolean sharded) {
+		this.sharded = sharded;
+		this.index = null;
+		return this;
+	}
+
+	public boolean isSharded() {
+		return sharded;
+	}
+
+	/**
+	 * Writes values to temp files which are moved over the key's file once they are forced to disk, and completes the writes' futures after that.
+	 * Files written within the commit interval are forced and moved together.
+	 * Should be set before the provider is used, disabling it commits the pending writes.
+	 */
+	public FileDataProvider setDurable(boolean durable) {
+		GroupCommit groupCommit = this.groupCommit;
+		if (durable == (groupCommit != null)) {
+			return this;
+		}
+		this.groupCommit = durable ? new GroupCommit(commitInterval) : null;
+		if (groupCommit != null) {
+			groupCommit.close();
+		}
+		return this;
+	}
+
+	public boolean isDurable() {
+		return groupCommit != null;
+	}
+
+	/**
+	 * @param commitInterval time in milliseconds durable writes wait for other writes to be committed with, must be set before {@link #setDurable(boolean)}
+	 */
+	public FileDataProvider setCommitInterval(long commitInterval) {
+		if (commitInterval < 0) {
+			throw new IllegalArgumentException("commitInterval must not be negative");
+		}
+		this.commitInterval = commitInterval;
+		return this;
+	}
+
+	public long getCommitInterval() {
+		return commitInterval;
+	}
+
+	/**
+	 * Reads the files of {@link #getAsync(String)} through an {@link AsynchronousFileChannel}, so the provider's executor only orders the read after pending writes of the key.
+	 * Without {@link #setDurable(boolean)}, a write of the key queued after the read may overwrite the file while it is read.
+	 */
+	public FileDataProvider setAsyncReads(boolean asyncReads) {
+		this.asyncReads = asyncReads;
+		return this;
+	}
+
+	public boolean isAsyncReads() {
+		return asyncReads;
+	}
+
+	/**
+	 * @param parallelism number of threads of the fork-join pool {@link #entries()} reads the files on, or <code>1</code> to read them one after another on the calling thread
+	 */
+	public FileDataProvider setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		ForkJoinPool pool = this.pool;
+		this.parallelism = parallelism;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		if (pool != null) {
+			pool.shutdown();
+		}
+		return this;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Starts watching the directory for files which are created, modified or deleted, e.g. by other processes sharing it, and keeps the key index up to date with them.
+	 * Listeners added to the watcher also receive changes of the provider's own writes.
+	 *
+	 * @return the watcher of the provider, which is created on the first call
+	 * @see org.inventivetalent.data.mapper.AsyncCacheMapper.CachedDataProvider#subscribe(FileWatcher)
+	 */
+	public synchronized FileWatcher watch() {
+		if (watcher == null) {
+			if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+				throw new RuntimeException("Failed to create directory " + this.dir);
+			}
+			watcher = new FileWatcher(this.dir.toPath(), sharded);
+			watcher.addListener(this::onChange);
+		}
+		return watcher;
+	}
+
+	/**
+	 * Updates the index with the current state of the changed file, since the event may be outdated
+	 */
+	void onChange(FileWatcher.Change change) {
+		Set<String> index = this.index;
+		if (index == null) {
+			return;
+		}
+		if (change.getKind() == FileWatcher.Kind.OVERFLOW) {
+			this.index = null;
+			return;
+		}
+		String key = change.getKey();
+		if (exists(file(key))) {
+			index.add(key);
+		} else {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * @return the file of the key, which may not exist
+	 */
+	File file(String key) {
+		if (!sharded) {
+			return new File(this.dir, key);
+		}
+		return new File(new File(this.dir, shard(key)), encode(key));
+	}
+
+	/**
+	 * Writes the value to the key's file, or to a temp file which is moved over it by the group commit in durable mode, and adds the key to the index.
+	 * Runs in the key's task on the executor, so it stays ordered with removes of the key.
+	 */
+	void store(String key, String value) {
+		File file = file(key);
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new RuntimeException("Failed to create directory " + parent);
+		}
+		GroupCommit groupCommit = this.groupCommit;
+		if (groupCommit == null) {
+			writeFile(file, value);
+		} else {
+			File temp = new File(parent, file.getName() + "." + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+			writeFile(temp, value);
+			groupCommit.add(temp, file);
+		}
+		index().add(key);
+	}
+
+	/**
+	 * @return a stage completed once the writes of the keys are committed in durable mode, or the write's future otherwise
+	 */
+	CompletionStage<Void> committed(CompletableFuture<Void> written, Collection<String> keys) {
+		GroupCommit groupCommit = this.groupCommit;
+		if (groupCommit == null) {
+			return written;
+		}
+		return written.thenCompose(v -> CompletableFuture.allOf(keys.stream().map(key -> groupCommit.sync(file(key))).toArray(CompletableFuture<?>[]::new)));
+	}
+
+	/**
+	 * @return whether the file or a pending write of it exists
+	 */
+	boolean exists(File file) {
+		GroupCommit groupCommit = this.groupCommit;
+		return file.exists() || (groupCommit != null && groupCommit.pending(file) != null);
+	}
+
+	/**
+	 * Reads the file, or its pending write in durable mode
+	 *
+	 * @return the content, or <code>null</code> if the file does not exist
+	 */
+	@Nullable
+	String read(File file) {
+		GroupCommit groupCommit = this.groupCommit;
+		File temp = groupCommit != null ? groupCommit.pending(file) : null;
+		if (temp != null) {
+			try {
+				return readFile(temp);
+			} catch (RuntimeException e) {
+				// Moved over the file in the meantime
+				if (temp.exists()) { throw e; }
+			}
+		}
 		if (!file.exists()) {
+			return null;
+		}
+		return readFile(file);
+	}
+
+	/**
+	 * Reads the file, or its pending write in durable mode, through an {@link AsynchronousFileChannel}
+	 *
+	 * @return a future completed with the content, or <code>null</code> if the file does not exist
+	 */
+	CompletableFuture<String> readAsync(File file) {
+		GroupCommit groupCommit = this.groupCommit;
+		File temp = groupCommit != null ? groupCommit.pending(file) : null;
+		if (temp == null) {
+			return readFileAsync(file);
+		}
+		// Missing if it was moved over the file in the meantime
+		return readFileAsync(temp).thenCompose(content -> content != null ? CompletableFuture.completedFuture(content) : readFileAsync(file));
+	}
+
+	/**
+	 * @return a future completed with the content, or <code>null</code> if the file does not exist
+	 */
+	CompletableFuture<String> readFileAsync(File file) {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		AsynchronousFileChannel channel;
+		ByteBuffer buffer;
+		try {
+			channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
 			try {
-				file.createNewFile();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+				buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+			} catch (IOException | ArithmeticException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (NoSuchFileException e) {
+			future.complete(null);
+			return future;
+		} catch (IOException | ArithmeticException e) {
+			future.completeExceptionally(new RuntimeException(e));
+			return future;
+		}
+		channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer read, Void attachment) {
+				if (read >= 0 && buffer.hasRemaining()) {
+					channel.read(buffer, buffer.position(), null, this);
+					return;
+				}
+				close();
+				future.complete(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public void failed(Throwable throwable, Void attachment) {
+				close();
+				future.completeExceptionally(throwable);
+			}
+
+			void close() {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+		});
+		return future;
+	}
+
+	boolean deleteFile(String key, File file) {
+		GroupCommit groupCommit = this.groupCommit;
+		if (groupCommit != null) {
+			groupCommit.cancel(file);
+		}
+		boolean deleted = file.delete();
+		index().remove(key);
+		return deleted;
+	}
+
+	static String shard(String key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		hash ^= hash >>> 8;
+		return new String(new char[] { HEX[hash >> 4 & 0xf], HEX[hash & 0xf] });
+	}
+
+	/**
+	 * Percent-encodes the UTF-8 bytes of the key except for ASCII letters, digits, <code>-</code>, <code>_</code> and <code>.</code>,
+	 * and a leading <code>.</code> so the name is never hidden, <code>.</code> or <code>..</code>
+	 */
+	static String encode(String key) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		StringBuilder builder = new StringBuilder(bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xff;
+			if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-' || b == '_' || (b == '.' && i > 0)) {
+				builder.append((char) b);
+			} else {
+				builder.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+			}
+		}
+		return builder.toString();
+	}
+
+	static String decode(String name) {
+		if (name.indexOf('%') < 0) {
+			return name;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '%') {
+				out.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				out.write(c);
+			}
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the keys of all files, listed on the first call
+	 */
+	Set<String> index() {
+		Set<String> index = this.index;
+		if (index == null) {
+			synchronized (this) {
+				if ((index = this.index) == null) {
+					this.index = index = loadIndex();
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Lists the directory, or all shard directories in parallel
+	 */
+	Set<String> loadIndex() {
+		Set<String> index = ConcurrentHashMap.newKeySet();
+		if (!this.dir.isDirectory()) {
+			return index;
+		}
+		if (!sharded) {
+			try (Stream<Path> files = list(this.dir.toPath())) {
+				files.map(path -> path.getFileName().toString()).filter(name -> !name.endsWith(TEMP_SUFFIX)).forEach(index::add);
+			}
+			return index;
+		}
+		List<Path> shards;
+		try (Stream<Path> files = list(this.dir.toPath())) {
+			shards = files.filter(path -> path.getFileName().toString().length() == 2 && Files.isDirectory(path)).collect(Collectors.toList());
+		}
+		shards.parallelStream().forEach(shard -> {
+			try (Stream<Path> files = list(shard)) {
+				files.map(path -> path.getFileName().toString()).filter(name -> !name.endsWith(TEMP_SUFFIX)).forEach(name -> index.add(decode(name)));
 			}
+		});
+		return index;
+	}
+
+	static Stream<Path> list(Path dir) {
+		try {
+			return Files.list(dir);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-		return file;
 	}
 
 	void writeFile(File file, String content) {
-		try (Writer writer = new FileWriter(file)) {
-			writer.write(content);
+		try {
+			Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Reads the whole file into an array of its size and decodes it once
+	 */
 	String readFile(File file) {
-		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-			StringBuilder builder = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				builder.append(line);
-			}
-			return builder.toString();
+		try {
+			return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -63,87 +447,83 @@ public class FileDataProvider extends AbstractAsyncDataProvider<String> implemen
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull String value) {
-		File file = getFile(key);
-		execute(() -> writeFile(file, value));
+		provide(putAsync(key, value), null);
 	}
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
-		File file = getFile(key);
-		execute(() -> writeFile(file, valueCallable.provide()));
+		provide(putAsync(key, valueCallable), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull Map<String, String> map) {
-		execute(() -> {
-			for (Map.Entry<String, String> entry : map.entrySet()) {
-				File file = getFile(entry.getKey());
-				writeFile(file, entry.getValue());
-			}
-		});
+		provide(putAllAsync(map), null);
 	}
 
 	@Nullable
 	@Override
 	public String get(@Nonnull String key) {
-		return readFile(getFile(key));
+		return read(file(key));
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> getAll(@Nonnull Collection<String> keys) {
+		return readAll(keys.parallelStream().filter(this::contains));
+	}
+
+	/**
+	 * Reads the files of the keys, in parallel if the stream is parallel
+	 */
+	Map<String, String> readAll(Stream<String> keys) {
+		Map<String, String> map = new ConcurrentHashMap<>();
+		keys.forEach(key -> {
+			String value = read(file(key));
+			if (value != null) { map.put(key, value); }
+		});
+		return map;
 	}
 
 	@Override
 	public boolean contains(@Nonnull String key) {
-		return new File(this.dir, key).exists();
+		return index().contains(key);
 	}
 
 	@Override
 	public void putAll(@Nonnull DataCallable<Map<String, String>> mapCallable) {
-		execute(() -> {
-			Map<String, String> map = mapCallable.provide();
-			for (Map.Entry<String, String> entry : map.entrySet()) {
-				File file = getFile(entry.getKey());
-				writeFile(file, entry.getValue());
-			}
-		});
+		provide(putAllAsync(mapCallable), null);
 	}
 
 	@Override
 	public void get(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		File file = getFile(key);
-		execute(() -> callback.provide(readFile(file)));
+		provide(getAsync(key), callback);
 	}
 
 	@Override
 	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
-		execute(() -> callback.provide(new File(this.dir, key).exists()));
+		provide(containsAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		execute(() -> {
-			File file = new File(this.dir, key);
-			if (file.exists()) {
-				callback.provide(readFile(file));
-				file.delete();
-			} else {
-				callback.provide(null);
-			}
-		});
+		provide(removeAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key) {
-		execute(() -> {
-			File file = new File(this.dir, key);
-			if (file.exists()) { file.delete(); }
+		execute(key, () -> {
+			File file = file(key);
+			if (exists(file)) { deleteFile(key, file); }
 		});
 	}
 
 	@Nullable
 	@Override
 	public String getAndRemove(@Nonnull String key) {
-		File file = new File(this.dir, key);
-		if (file.exists()) {
-			String content = readFile(file);
-			file.delete();
+		File file = file(key);
+		if (exists(file)) {
+			String content = read(file);
+			deleteFile(key, file);
 			return content;
 		}
 		return null;
@@ -152,48 +532,142 @@ public class FileDataProvider extends AbstractAsyncDataProvider<String> implemen
 	@Nonnull
 	@Override
 	public Collection<String> keys() {
-		return Arrays.asList(this.dir.list());
+		return new ArrayList<>(index());
 	}
 
 	@Nonnull
 	@Override
 	public Map<String, String> entries() {
-		Map<String, String> map = new HashMap<>();
-		File[] files = this.dir.listFiles();
-		if (files != null) {
-			for (File file : files) {
-				map.put(file.getName(), readFile(file));
-			}
+		ForkJoinPool pool = this.pool;
+		if (pool == null) {
+			return readAll(index().stream());
 		}
-		return map;
+		return pool.submit(() -> readAll(index().parallelStream())).join();
+	}
+
+	/**
+	 * Streams a copy of the keys, the batch size is not used
+	 */
+	@Nonnull
+	@Override
+	public Stream<String> streamKeys(int batchSize) {
+		return new ArrayList<>(index()).stream();
+	}
+
+	/**
+	 * Reads the files lazily on the calling thread, the batch size is not used
+	 */
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+		return streamKeys(batchSize)//
+				.<Map.Entry<String, String>> map(key -> new AbstractMap.SimpleImmutableEntry<>(key, read(file(key))))//
+				.filter(entry -> entry.getValue() != null);
 	}
 
 	@Override
 	public int size() {
-		return this.dir.list().length;
+		return index().size();
 	}
 
 	@Override
 	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
-		execute(() -> callback.provide(Arrays.asList(this.dir.list())));
+		provide(keysAsync(), callback);
 	}
 
 	@Override
 	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
-		execute(() -> {
-			Map<String, String> map = new HashMap<>();
-			File[] files = this.dir.listFiles();
-			if (files != null) {
-				for (File file : files) {
-					map.put(file.getName(), readFile(file));
-				}
-			}
-			callback.provide(map);
-		});
+		provide(entriesAsync(), callback);
 	}
 
 	@Override
 	public void size(@Nonnull DataCallback<Integer> callback) {
-		execute(() -> callback.provide(this.dir.list().length));
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+		return committed(write(key, () -> store(key, value)), Collections.singleton(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		return committed(write(key, () -> store(key, valueCallable.provide())), Collections.singleton(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+		return committed(run(() -> putAll0(map)), map.keySet());
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		Set<String> keys = ConcurrentHashMap.newKeySet();
+		return committed(run(() -> {
+			Map<String, String> map = mapCallable.provide();
+			keys.addAll(map.keySet());
+			putAll0(map);
+		}), keys);
+	}
+
+	void putAll0(Map<String, String> map) {
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			store(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> getAsync(@Nonnull String key) {
+		File file = file(key);
+		if (asyncReads) {
+			return supply(key, () -> file).thenCompose(this::readAsync);
+		}
+		return supply(key, () -> read(file));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+		return supply(() -> getAll(keys));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> contains(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> removeAsync(@Nonnull String key) {
+		return supply(key, () -> getAndRemove(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(this::keys);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> entriesAsync() {
+		ForkJoinPool pool = this.pool;
+		if (pool == null) {
+			return supply(this::entries);
+		}
+		// Only copies the keys on the provider's executor
+		return supply(() -> new ArrayList<>(index())).thenApplyAsync(keys -> readAll(keys.parallelStream()), pool);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(this::size);
 	}
 }
@@ -0,0 +1,186 @@
+package org.inventivetalent.data.file;
+
+import org.inventivetalent.data.async.DataCallback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the directory of a {@link FileDataProvider} with a {@link WatchService} and passes a {@link Change} for each file which is created, modified or deleted to its listeners.
+ * This includes changes by other processes sharing the directory, and the provider's own writes.
+ * <p>
+ * Events are delivered on the watcher's thread, as soon as the platform's watch service reports them. If events were lost, a change of kind {@link Kind#OVERFLOW} without a key is passed on.
+ */
+public class FileWatcher implements AutoCloseable {
+
+	public enum Kind {
+		CREATED,
+		MODIFIED,
+		DELETED,
+		/**
+		 * Events were lost, any key may have changed
+		 */
+		OVERFLOW
+	}
+
+	public static class Change {
+
+		private final Kind   kind;
+		private final String key;
+
+		Change(@Nonnull Kind kind, @Nullable String key) {
+			this.kind = kind;
+			this.key = key;
+		}
+
+		@Nonnull
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the changed key, or <code>null</code> for {@link Kind#OVERFLOW}
+		 */
+		@Nullable
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public String toString() {
+			return "Change{" + kind + ", " + key + "}";
+		}
+	}
+
+	private final Path                        root;
+	private final boolean                     sharded;
+	private final WatchService                watchService;
+	private final Map<WatchKey, Path>         dirs      = new ConcurrentHashMap<>();
+	private final List<DataCallback<Change>>  listeners = new CopyOnWriteArrayList<>();
+	private final Thread                      thread;
+
+	FileWatcher(@Nonnull Path root, boolean sharded) {
+		this.root = root;
+		this.sharded = sharded;
+		try {
+			this.watchService = root.getFileSystem().newWatchService();
+			register(root);
+			if (sharded) {
+				try (Stream<Path> shards = Files.list(root)) {
+					shards.filter(this::isShard).forEach(this::register);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.thread = new Thread(this::run, "FileWatcher-" + root.getFileName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public FileWatcher addListener(@Nonnull DataCallback<Change> listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	public FileWatcher removeListener(@Nonnull DataCallback<Change> listener) {
+		listeners.remove(listener);
+		return this;
+	}
+
+	boolean isShard(Path path) {
+		return path.getFileName().toString().length() == 2 && Files.isDirectory(path);
+	}
+
+	void register(Path dir) {
+		try {
+			dirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	void run() {
+		while (true) {
+			WatchKey watchKey;
+			try {
+				watchKey = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			Path dir = dirs.get(watchKey);
+			for (WatchEvent<?> event : watchKey.pollEvents()) {
+				if (event.kind() == OVERFLOW) {
+					emit(Kind.OVERFLOW, null);
+					continue;
+				}
+				Path path = dir.resolve((Path) event.context());
+				if (sharded && dir.equals(root)) {
+					if (event.kind() == ENTRY_CREATE && isShard(path)) {
+						registerShard(path);
+					}
+					continue;
+				}
+				emitFile(event.kind() == ENTRY_CREATE ? Kind.CREATED : event.kind() == ENTRY_MODIFY ? Kind.MODIFIED : Kind.DELETED, path);
+			}
+			if (!watchKey.reset()) {
+				dirs.remove(watchKey);
+			}
+		}
+	}
+
+	/**
+	 * Registers a new shard directory, and reports the files created in it before it was registered
+	 */
+	void registerShard(Path shard) {
+		try {
+			dirs.put(shard.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), shard);
+			try (Stream<Path> files = Files.list(shard)) {
+				files.forEach(path -> emitFile(Kind.CREATED, path));
+			}
+		} catch (IOException ignored) {
+			// Deleted in the meantime
+		}
+	}
+
+	void emitFile(Kind kind, Path path) {
+		String name = path.getFileName().toString();
+		if (name.endsWith(FileDataProvider.TEMP_SUFFIX)) {
+			return;
+		}
+		emit(kind, sharded ? FileDataProvider.decode(name) : name);
+	}
+
+	void emit(Kind kind, @Nullable String key) {
+		Change change = new Change(kind, key);
+		for (DataCallback<Change> listener : listeners) {
+			try {
+				listener.provide(change);
+			} catch (Throwable throwable) {
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the directory
+	 */
+	@Override
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package org.inventivetalent.data.file;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects written temp files and moves them over their targets in batches.
+ * A batch is committed once the interval has passed since its first write: its temp files are forced to disk in parallel, moved over their targets in the order they were added,
+ * and each directory is forced once, so a crash leaves either the old or the new content of a file.
+ * <p>
+ * Each temp file is committed on its own: if it can't be forced or moved, only its future fails, and it is kept for reads and retried after a growing delay unless the target was written again.
+ * Temp files which still can't be committed when the group commit is closed are deleted.
+ */
+class GroupCommit {
+
+	static final long MAX_RETRY_DELAY = 10000;
+
+	private final ScheduledExecutorService scheduler;
+	// Only one batch is committed at a time
+	private final Object                   commitLock = new Object();
+	private final long                     interval;
+	// Latest pending temp file of each target, for reads
+	private final Map<File, Pending>       latest     = new ConcurrentHashMap<>();
+	private       List<Pending>            pending    = new ArrayList<>();
+	private       List<Pending>            committing = Collections.emptyList();
+	private       boolean                  scheduled;
+	private       int                      retries;
+	private       boolean                  closed;
+
+	/**
+	 * @param interval time in milliseconds a batch waits for more writes
+	 */
+	GroupCommit(long interval) {
+		this.interval = interval;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "FileDataProvider-GroupCommit");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Adds a completely written temp file, which will replace the target
+	 */
+	synchronized void add(@Nonnull File temp, @Nonnull File target) {
+		Pending pending = new Pending(temp, target);
+		this.pending.add(pending);
+		latest.put(target, pending);
+	}
+
+	/**
+	 * @return the temp file which will replace the target, or <code>null</code> if there is none
+	 */
+	@Nullable
+	File pending(@Nonnull File target) {
+		Pending pending = latest.get(target);
+		return pending != null ? pending.temp : null;
+	}
+
+	/**
+	 * Drops the pending temp files of the target, e.g. before it is deleted
+	 */
+	synchronized void cancel(@Nonnull File target) {
+		if (latest.remove(target) == null) {
+			return;
+		}
+		for (List<Pending> list : Arrays.asList(pending, committing)) {
+			for (Pending pending : list) {
+				if (pending.target.equals(target) && !pending.cancelled) {
+					pending.cancelled = true;
+					pending.temp.delete();
+					pending.future.complete(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a future completed once the latest temp file added for the target has replaced it, or failed if it could not be committed
+	 */
+	CompletableFuture<Void> sync(@Nonnull File target) {
+		Pending pending;
+		boolean closed;
+		synchronized (this) {
+			pending = latest.get(target);
+			if (pending == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			closed = this.closed;
+			if (!closed) {
+				schedule(interval);
+			}
+		}
+		if (closed) {
+			// Added after the last batch was committed
+			commit();
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Schedules a commit unless one is scheduled already, has to be called while holding the lock
+	 */
+	void schedule(long delay) {
+		if (!scheduled) {
+			scheduled = true;
+			scheduler.schedule(this::commit, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	void commit() {
+		synchronized (commitLock) {
+			commit0();
+		}
+	}
+
+	void commit0() {
+		List<Pending> committing;
+		synchronized (this) {
+			committing = this.committing = this.pending;
+			this.pending = new ArrayList<>();
+			this.scheduled = false;
+		}
+		committing.parallelStream().forEach(pending -> {
+			try {
+				force(pending.temp);
+			} catch (NoSuchFileException e) {
+				if (!pending.cancelled) { pending.failure = e; }
+			} catch (IOException e) {
+				pending.failure = e;
+			}
+		});
+		Set<File> dirs = new HashSet<>();
+		List<Pending> moved = new ArrayList<>();
+		List<Pending> retried = new ArrayList<>();
+		boolean closed;
+		synchronized (this) {
+			closed = this.closed;
+			for (Pending pending : committing) {
+				if (pending.cancelled) { continue; }
+				if (pending.failure == null) {
+					try {
+						Files.move(pending.temp.toPath(), pending.target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						latest.remove(pending.target, pending);
+						dirs.add(pending.target.getParentFile());
+						moved.add(pending);
+						continue;
+					} catch (IOException | RuntimeException e) {
+						pending.failure = e;
+					}
+				}
+				if (latest.get(pending.target) == pending) {
+					// Still the latest write of the target, so keep it readable and retry it with the next batch
+					Pending retry = new Pending(pending.temp, pending.target);
+					this.pending.add(retry);
+					latest.put(pending.target, retry);
+					retried.add(retry);
+				} else {
+					pending.temp.delete();
+				}
+			}
+			this.committing = Collections.emptyList();
+			if (retried.isEmpty()) {
+				retries = 0;
+			} else if (closed) {
+				// Nothing commits them anymore
+				for (Pending retry : retried) {
+					this.pending.remove(retry);
+					latest.remove(retry.target, retry);
+					retry.temp.delete();
+				}
+			} else {
+				retries++;
+				schedule(Math.min(MAX_RETRY_DELAY, Math.max(interval, 1) << Math.min(retries, 20)));
+			}
+		}
+		for (File dir : dirs) {
+			try {
+				force(dir);
+			} catch (IOException ignored) {
+				// Directories can't be opened on some platforms, which persist the move without it
+			}
+		}
+		for (Pending pending : committing) {
+			if (pending.failure != null && !pending.cancelled) {
+				pending.future.completeExceptionally(new RuntimeException("Failed to commit " + pending.target, pending.failure));
+			}
+		}
+		for (Pending pending : moved) {
+			pending.future.complete(null);
+		}
+		if (closed) {
+			for (Pending retry : retried) {
+				retry.future.completeExceptionally(new IllegalStateException("Closed before " + retry.target + " could be committed"));
+			}
+		}
+	}
+
+	static void force(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Commits the pending temp files and stops the commit thread. Temp files added afterwards are committed by {@link #sync(File)} on the calling thread.
+	 */
+	void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		try {
+			scheduler.submit(this::commit).get();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		scheduler.shutdown();
+	}
+
+	static class Pending {
+		final    File                    temp;
+		final    File                    target;
+		final    CompletableFuture<Void> future = new CompletableFuture<>();
+		volatile boolean                 cancelled;
+		volatile Exception               failure;
+
+		Pending(File temp, File target) {
+			this.temp = temp;
+			this.target = target;
+		}
+	}
+
+}
@@ -0,0 +1,843 @@
+package org.inventivetalent.data.file;
+
+import org.inventivetalent.data.DataProvider;
+import org.inventivetalent.data.async.AbstractAsyncDataProvider;
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.inventivetalent.data.async.DataCallable;
+import org.inventivetalent.data.async.DataCallback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Bitcask-style store which appends every write to a segment file and keeps the position of each key's latest record in memory, so a read is a single positional read.
+ * Segments which are no longer written to get a hint file listing their records, which is loaded on startup instead of reading the whole segment.
+ * Overwritten and removed records stay on disk until {@link #compact()} copies the live records of all segments into new ones.
+ * Hint files and compactions are written on a background thread of the provider, so writes never wait for them.
+ */
+public class LogDataProvider extends AbstractAsyncDataProvider<String> implements AsyncDataProvider<String>, DataProvider<String> {
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	static final String DATA_SUFFIX = ".data";
+	static final String HINT_SUFFIX = ".hint";
+	// crc, key length, value length
+	static final int    HEADER_SIZE = 12;
+	static final int    TOMBSTONE   = -1;
+
+	private final File                                dir;
+	private final Map<String, Location>               keyDirectory = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Long, Segment> segments     = new ConcurrentSkipListMap<>();
+	// Held exclusively while segments are closed and deleted by a compaction
+	private final ReadWriteLock                       segmentLock  = new ReentrantReadWriteLock();
+	private final Object                              writeLock    = new Object();
+	private final AtomicBoolean                       compacting   = new AtomicBoolean();
+	private final ThreadPoolExecutor                  background   = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+		Thread thread = new Thread(runnable, "LogDataProvider-Background");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private       Segment                             active;
+	private       long                                segmentSize  = DEFAULT_SEGMENT_SIZE;
+	private       double                              compactionThreshold;
+
+	public LogDataProvider(File dir) {
+		this.dir = dir;
+		this.background.allowCoreThreadTimeOut(true);
+		open();
+	}
+
+	public LogDataProvider(Executor executor, File dir) {
+		super(executor);
+		this.dir = dir;
+		this.background.allowCoreThreadTimeOut(true);
+		open();
+	}
+
+	/**
+	 * @param segmentSize size after which writes go to a new segment
+	 */
+	public LogDataProvider setSegmentSize(long segmentSize) {
+		if (segmentSize < 1) {
+			throw new IllegalArgumentException("segmentSize must be at least 1");
+		}
+		this.segmentSize = segmentSize;
+		return this;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * @param compactionThreshold share of unused bytes in the closed segments at which a compaction is started when a segment is closed, or <code>0</code> to only compact with {@link #compact()}
+	 */
+	public LogDataProvider setCompactionThreshold(double compactionThreshold) {
+		if (compactionThreshold < 0 || compactionThreshold > 1) {
+			throw new IllegalArgumentException("compactionThreshold must be between 0 and 1");
+		}
+		this.compactionThreshold = compactionThreshold;
+		return this;
+	}
+
+	public double getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	/**
+	 * @return share of bytes in the closed segments which belong to overwritten or removed records
+	 */
+	public double getGarbageRatio() {
+		long total = 0;
+		long dead = 0;
+		for (Segment segment : segments.values()) {
+			if (segment == active) { continue; }
+			total += segment.size;
+			dead += segment.deadBytes.get();
+		}
+		return total == 0 ? 0 : (double) dead / total;
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	void open() {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new RuntimeException("Failed to create directory " + dir);
+		}
+		File[] files = dir.listFiles((file, name) -> name.endsWith(DATA_SUFFIX));
+		long lastId = 0;
+		if (files != null) {
+			List<Long> ids = new ArrayList<>();
+			for (File file : files) {
+				ids.add(Long.parseLong(file.getName().substring(0, file.getName().length() - DATA_SUFFIX.length())));
+			}
+			Collections.sort(ids);
+			for (long id : ids) {
+				Segment segment = openSegment(id);
+				segments.put(id, segment);
+				File hintFile = hintFile(id);
+				List<Record> records;
+				if (hintFile.exists()) {
+					records = readHint(segment, hintFile);
+				} else {
+					// Not closed cleanly, so the last record may be incomplete
+					records = scan(segment, true);
+					writeHint(segment, records);
+				}
+				for (Record record : records) {
+					apply(record);
+				}
+				lastId = id;
+			}
+		}
+		Segment last = segments.get(lastId);
+		if (last != null && last.size == 0) {
+			// Nothing was written since the last start, so keep writing to it instead of adding another empty segment
+			hintFile(lastId).delete();
+			active = last;
+			return;
+		}
+		active = openSegment(lastId + 1);
+		segments.put(active.id, active);
+	}
+
+	File dataFile(long id) {
+		return new File(dir, String.format("%010d", id) + DATA_SUFFIX);
+	}
+
+	File hintFile(long id) {
+		return new File(dir, String.format("%010d", id) + HINT_SUFFIX);
+	}
+
+	Segment openSegment(long id) {
+		try {
+			return new Segment(id, FileChannel.open(dataFile(id).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Updates the key directory with a record loaded on startup
+	 */
+	void apply(Record record) {
+		Location previous = record.tombstone ? keyDirectory.remove(record.key) : keyDirectory.put(record.key, record.location);
+		if (previous != null) {
+			markDead(previous);
+		}
+		if (record.tombstone) {
+			markDead(record.location);
+		}
+	}
+
+	void markDead(Location location) {
+		Segment segment = segments.get(location.segment);
+		if (segment != null) {
+			segment.deadBytes.addAndGet(location.size);
+		}
+	}
+
+	static ByteBuffer encode(String key, @Nullable String value) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] valueBytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+		buffer.putInt(0);
+		buffer.putInt(keyBytes.length);
+		buffer.putInt(value == null ? TOMBSTONE : valueBytes.length);
+		buffer.put(keyBytes);
+		buffer.put(valueBytes);
+		buffer.putInt(0, checksum(buffer.array(), buffer.capacity()));
+		buffer.flip();
+		return buffer;
+	}
+
+	static int checksum(byte[] record, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 4, length - 4);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Reads the record at the location with one positional read
+	 *
+	 * @return the record, with its checksum verified
+	 */
+	ByteBuffer readRecord(Location location) {
+		Segment segment = segments.get(location.segment);
+		if (segment == null) {
+			throw new IllegalStateException("Segment " + location.segment + " is closed");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(location.size);
+		segment.read(buffer, location.offset);
+		if (buffer.getInt(0) != checksum(buffer.array(), location.size)) {
+			throw new IllegalStateException("Corrupt record in segment " + location.segment + " at " + location.offset);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	@Nullable
+	String read(String key) {
+		segmentLock.readLock().lock();
+		try {
+			Location location = keyDirectory.get(key);
+			if (location == null) { return null; }
+			ByteBuffer record = readRecord(location);
+			int keyLength = record.getInt(4);
+			int valueLength = record.getInt(8);
+			return new String(record.array(), HEADER_SIZE + keyLength, valueLength, StandardCharsets.UTF_8);
+		} finally {
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends the records to the active segment and points the key directory at them
+	 *
+	 * @param entries keys and values, <code>null</code> values write a tombstone
+	 */
+	void append(List<Map.Entry<String, String>> entries) {
+		List<ByteBuffer> records = new ArrayList<>(entries.size());
+		for (Map.Entry<String, String> entry : entries) {
+			records.add(encode(entry.getKey(), entry.getValue()));
+		}
+		List<Segment> closed = new ArrayList<>();
+		synchronized (writeLock) {
+			int start = 0;
+			while (start < records.size()) {
+				// Fill the active segment, rolling over once it is full
+				long available = segmentSize - active.size;
+				int end = start;
+				long length = 0;
+				while (end < records.size() && (end == start && active.size == 0 || length + records.get(end).remaining() <= available)) {
+					length += records.get(end).remaining();
+					end++;
+				}
+				if (end == start) {
+					closed.add(roll());
+					continue;
+				}
+				long offset = active.append(records.subList(start, end).toArray(new ByteBuffer[0]));
+				for (int i = start; i < end; i++) {
+					Map.Entry<String, String> entry = entries.get(i);
+					Location location = new Location(active.id, offset, records.get(i).limit());
+					offset += location.size;
+					Location previous = entry.getValue() == null ? keyDirectory.remove(entry.getKey()) : keyDirectory.put(entry.getKey(), location);
+					if (previous != null) {
+						markDead(previous);
+					}
+					if (entry.getValue() == null) {
+						markDead(location);
+					}
+				}
+				start = end;
+			}
+		}
+		if (closed.isEmpty()) {
+			return;
+		}
+		// Not on the provider's executor, which the write may be holding up
+		background.execute(() -> {
+			for (Segment segment : closed) {
+				writeHint(segment);
+			}
+		});
+		if (compactionThreshold > 0 && getGarbageRatio() >= compactionThreshold) {
+			compact();
+		}
+	}
+
+	void append(String key, @Nullable String value) {
+		append(Collections.singletonList(new AbstractMap.SimpleEntry<>(key, value)));
+	}
+
+	/**
+	 * Closes the active segment and starts a new one
+	 *
+	 * @return the closed segment, whose hint file still has to be written
+	 */
+	Segment roll() {
+		Segment closed = active;
+		active = openSegment(closed.id + 1);
+		segments.put(active.id, active);
+		return closed;
+	}
+
+	/**
+	 * Writes the hint file of a closed segment, unless a compaction deleted it in the meantime
+	 */
+	void writeHint(Segment segment) {
+		segmentLock.readLock().lock();
+		try {
+			if (segments.containsKey(segment.id)) {
+				writeHint(segment, scan(segment, false));
+			}
+		} finally {
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads all records of the segment sequentially
+	 *
+	 * @param truncate whether to cut off an incomplete or corrupt tail, otherwise it fails
+	 */
+	List<Record> scan(Segment segment, boolean truncate) {
+		List<Record> records = new ArrayList<>();
+		long offset = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile(segment.id)), 1 << 16))) {
+			byte[] header = new byte[HEADER_SIZE];
+			while (offset < segment.size) {
+				if (segment.size - offset < HEADER_SIZE) { break; }
+				in.readFully(header);
+				ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+				int keyLength = headerBuffer.getInt(4);
+				int valueLength = headerBuffer.getInt(8);
+				if (keyLength < 0 || valueLength < TOMBSTONE) { break; }
+				int size = HEADER_SIZE + keyLength + Math.max(0, valueLength);
+				if (segment.size - offset < size) { break; }
+				byte[] record = new byte[size];
+				System.arraycopy(header, 0, record, 0, HEADER_SIZE);
+				in.readFully(record, HEADER_SIZE, size - HEADER_SIZE);
+				if (headerBuffer.getInt(0) != checksum(record, size)) { break; }
+				records.add(new Record(new String(record, HEADER_SIZE, keyLength, StandardCharsets.UTF_8), new Location(segment.id, offset, size), valueLength == TOMBSTONE));
+				offset += size;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		if (offset < segment.size) {
+			if (!truncate) {
+				throw new IllegalStateException("Corrupt record in segment " + segment.id + " at " + offset);
+			}
+			segment.truncate(offset);
+		}
+		return records;
+	}
+
+	/**
+	 * Writes the hint file of a segment which is no longer written to, replacing it atomically
+	 */
+	void writeHint(Segment segment, List<Record> records) {
+		File hintFile = hintFile(segment.id);
+		File tempFile = new File(dir, hintFile.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+			for (Record record : records) {
+				byte[] keyBytes = record.key.getBytes(StandardCharsets.UTF_8);
+				out.writeLong(record.location.offset);
+				out.writeInt(record.location.size);
+				out.writeBoolean(record.tombstone);
+				out.writeInt(keyBytes.length);
+				out.write(keyBytes);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			Files.move(tempFile.toPath(), hintFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	List<Record> readHint(Segment segment, File hintFile) {
+		List<Record> records = new ArrayList<>();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(hintFile.toPath()));
+			while (buffer.hasRemaining()) {
+				long offset = buffer.getLong();
+				int size = buffer.getInt();
+				boolean tombstone = buffer.get() != 0;
+				int keyLength = buffer.getInt();
+				String key = new String(buffer.array(), buffer.position(), keyLength, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + keyLength);
+				records.add(new Record(key, new Location(segment.id, offset, size), tombstone));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return records;
+	}
+
+	/**
+	 * Copies the live records of all segments into new ones on the provider's background thread and deletes the old segments.
+	 * Writes continue in a new active segment meanwhile. Does nothing if a compaction is already running.
+	 */
+	@Nonnull
+	public CompletionStage<Void> compact() {
+		if (!compacting.compareAndSet(false, true)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<Void> future;
+		try {
+			future = CompletableFuture.runAsync(this::compact0, background);
+		} catch (RejectedExecutionException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		future.whenComplete((v, throwable) -> compacting.set(false));
+		return future;
+	}
+
+	void compact0() {
+		// Sorted, so the inputs are deleted oldest first and a crash can't leave an older record without the newer tombstone
+		Map<Long, Segment> inputs = new TreeMap<>();
+		long nextId;
+		long lastId;
+		synchronized (writeLock) {
+			for (Segment segment : segments.values()) {
+				inputs.put(segment.id, segment);
+			}
+			// The copies get the ids between the old segments and the new active one, so replaying segments in order on startup stays correct
+			nextId = active.id + 1;
+			lastId = active.id + inputs.size();
+			active = openSegment(lastId + 1);
+			segments.put(active.id, active);
+		}
+
+		Segment output = null;
+		List<Record> outputRecords = new ArrayList<>();
+		for (Map.Entry<String, Location> entry : keyDirectory.entrySet()) {
+			Location location = entry.getValue();
+			if (!inputs.containsKey(location.segment)) { continue; }
+			ByteBuffer record = readRecord(location);
+			if (output == null || output.size > 0 && output.size + location.size > segmentSize && output.id < lastId) {
+				if (output != null) {
+					finishCompaction(output, outputRecords);
+				}
+				output = openSegment(nextId++);
+				segments.put(output.id, output);
+				outputRecords = new ArrayList<>();
+			}
+			Location copy = new Location(output.id, output.append(record), location.size);
+			outputRecords.add(new Record(entry.getKey(), copy, false));
+			if (!keyDirectory.replace(entry.getKey(), location, copy)) {
+				// Written or removed since, the copy is already outdated
+				output.deadBytes.addAndGet(copy.size);
+			}
+		}
+		if (output != null) {
+			finishCompaction(output, outputRecords);
+		}
+
+		segmentLock.writeLock().lock();
+		try {
+			for (Segment segment : inputs.values()) {
+				segments.remove(segment.id);
+				segment.close();
+				dataFile(segment.id).delete();
+				hintFile(segment.id).delete();
+			}
+		} finally {
+			segmentLock.writeLock().unlock();
+		}
+	}
+
+	void finishCompaction(Segment output, List<Record> records) {
+		output.force();
+		writeHint(output, records);
+	}
+
+	/**
+	 * Flushes the active segment, writes its hint file and closes all segments. The provider can't be used afterwards.
+	 */
+	@Nonnull
+	public CompletionStage<Void> close() {
+		return run(() -> {
+			// Lets a running compaction and pending hint files finish first
+			background.shutdown();
+			try {
+				background.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			synchronized (writeLock) {
+				segmentLock.writeLock().lock();
+				try {
+					active.force();
+					writeHint(active, scan(active, false));
+					for (Segment segment : segments.values()) {
+						segment.close();
+					}
+					segments.clear();
+					keyDirectory.clear();
+				} finally {
+					segmentLock.writeLock().unlock();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull String value) {
+		provide(putAsync(key, value), null);
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		provide(putAsync(key, valueCallable), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull Map<String, String> map) {
+		provide(putAllAsync(map), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		provide(putAllAsync(mapCallable), null);
+	}
+
+	@Nullable
+	@Override
+	public String get(@Nonnull String key) {
+		return read(key);
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> getAll(@Nonnull Collection<String> keys) {
+		Map<String, String> map = new HashMap<>();
+		for (String key : keys) {
+			String value = read(key);
+			if (value != null) {
+				map.put(key, value);
+			}
+		}
+		return map;
+	}
+
+	@Override
+	public boolean contains(@Nonnull String key) {
+		return keyDirectory.containsKey(key);
+	}
+
+	@Override
+	public void get(@Nonnull String key, @Nonnull DataCallback<String> callback) {
+		provide(getAsync(key), callback);
+	}
+
+	@Override
+	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
+		provide(containsAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key, @Nonnull DataCallback<String> callback) {
+		provide(removeAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key) {
+		execute(key, () -> getAndRemove(key));
+	}
+
+	@Nullable
+	@Override
+	public String getAndRemove(@Nonnull String key) {
+		synchronized (writeLock) {
+			String value = read(key);
+			if (value != null) {
+				append(key, null);
+			}
+			return value;
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Collection<String> keys() {
+		return new ArrayList<>(keyDirectory.keySet());
+	}
+
+	/**
+	 * Reads the values in the order they are stored on disk
+	 */
+	@Nonnull
+	@Override
+	public Map<String, String> entries() {
+		try (Stream<Map.Entry<String, String>> stream = streamEntries(0)) {
+			Map<String, String> map = new HashMap<>();
+			stream.forEach(entry -> map.put(entry.getKey(), entry.getValue()));
+			return map;
+		}
+	}
+
+	@Override
+	public int size() {
+		return keyDirectory.size();
+	}
+
+	/**
+	 * Streams a snapshot of the key directory, the batch size is not used
+	 */
+	@Nonnull
+	@Override
+	public Stream<String> streamKeys(int batchSize) {
+		return keys().stream();
+	}
+
+	/**
+	 * Reads the values of a snapshot of the key directory lazily on the calling thread, in the order they are stored on disk. Keys removed in between are skipped.
+	 * The batch size is not used.
+	 */
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+		List<Map.Entry<String, Location>> locations = new ArrayList<>(keyDirectory.entrySet());
+		locations.sort(Comparator.comparing((Map.Entry<String, Location> entry) -> entry.getValue().segment).thenComparing(entry -> entry.getValue().offset));
+		return locations.stream()//
+				.map(entry -> {
+					String value = read(entry.getKey());
+					return value == null ? null : (Map.Entry<String, String>) new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value);
+				})//
+				.filter(Objects::nonNull);
+	}
+
+	@Override
+	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
+		provide(keysAsync(), callback);
+	}
+
+	@Override
+	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
+		provide(entriesAsync(), callback);
+	}
+
+	@Override
+	public void size(@Nonnull DataCallback<Integer> callback) {
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+		return write(key, () -> append(key, value));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		return write(key, () -> append(key, valueCallable.provide()));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+		List<Map.Entry<String, String>> entries = new ArrayList<>(map.entrySet());
+		return run(() -> append(entries));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		return run(() -> append(new ArrayList<>(mapCallable.provide().entrySet())));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> getAsync(@Nonnull String key) {
+		return supply(key, () -> read(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		return supply(() -> getAll(keyList));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> contains(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> removeAsync(@Nonnull String key) {
+		return supply(key, () -> getAndRemove(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(this::keys);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> entriesAsync() {
+		return supply(this::entries);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(this::size);
+	}
+
+	static class Location {
+
+		final long segment;
+		final long offset;
+		final int  size;
+
+		Location(long segment, long offset, int size) {
+			this.segment = segment;
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+
+	static class Record {
+
+		final String   key;
+		final Location location;
+		final boolean  tombstone;
+
+		Record(String key, Location location, boolean tombstone) {
+			this.key = key;
+			this.location = location;
+			this.tombstone = tombstone;
+		}
+	}
+
+	static class Segment {
+
+		final long        id;
+		final FileChannel channel;
+		final AtomicLong  deadBytes = new AtomicLong();
+		volatile long size;
+
+		Segment(long id, FileChannel channel) throws IOException {
+			this.id = id;
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		/**
+		 * @return offset of the first record
+		 */
+		long append(ByteBuffer... records) {
+			long offset = size;
+			try {
+				long written = 0;
+				long length = 0;
+				for (ByteBuffer record : records) {
+					length += record.remaining();
+				}
+				channel.position(offset);
+				while (written < length) {
+					written += channel.write(records);
+				}
+				size = offset + length;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return offset;
+		}
+
+		void read(ByteBuffer buffer, long position) {
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, position + buffer.position()) < 0) {
+						throw new EOFException("Record at " + position + " exceeds segment " + id);
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		void truncate(long size) {
+			try {
+				channel.truncate(size);
+				this.size = size;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		void force() {
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,784 @@
+package org.inventivetalent.data.file;
+
+import org.inventivetalent.data.DataProvider;
+import org.inventivetalent.data.async.AbstractAsyncDataProvider;
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.inventivetalent.data.async.DataCallable;
+import org.inventivetalent.data.async.DataCallback;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an open-addressing hash table and an append-only value arena in two memory-mapped files, so the data lives off-heap in the page cache.
+ * Lookups compare keys in place without creating objects per entry, and the files are used as they are when the provider is created again, without a load step.
+ * <p>
+ * The table is rebuilt with twice the slots when it is 75% full, and the arena is remapped with twice the size when it is full, or rewritten without overwritten
+ * and removed values if they make up half of it. Both files are limited to 2 GB. Changes are written to the page cache, call {@link #flush()} to force them to disk.
+ * <p>
+ * Rebuilds replace the files by renaming new ones over them while they are still mapped, which Windows does not allow, so the provider is not supported there.
+ * Replaced mappings are released right away where the JVM allows it, otherwise once they are garbage collected.
+ */
+public class MappedDataProvider extends AbstractAsyncDataProvider<String> implements AsyncDataProvider<String>, DataProvider<String> {
+
+	public static final int DEFAULT_CAPACITY   = 1024;
+	public static final int DEFAULT_ARENA_SIZE = 1024 * 1024;
+
+	static final String INDEX_FILE = "index.map";
+	static final String ARENA_FILE = "arena.map";
+	static final String TEMP_SUFFIX = ".tmp";
+
+	static final int   MAGIC       = 0x44415049;
+	static final float LOAD_FACTOR = 0.75f;
+	static final int   MAX_SIZE    = Integer.MAX_VALUE;
+
+	// sun.misc.Unsafe#invokeCleaner, to release mappings without waiting for the garbage collector
+	static final Object UNSAFE;
+	static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException ignored) {
+			// Not available, mappings are released by the garbage collector
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	// Index header: magic, capacity, size, tombstones, arena end, garbage, generation
+	static final int INDEX_HEADER     = 64;
+	static final int CAPACITY_OFFSET   = 4;
+	static final int SIZE_OFFSET       = 8;
+	static final int TOMBSTONES_OFFSET = 12;
+	static final int ARENA_END_OFFSET  = 16;
+	static final int GARBAGE_OFFSET    = 24;
+	static final int GENERATION_OFFSET = 32;
+	// Slot: hash, unused, arena offset of the entry
+	static final int SLOT_SIZE         = 16;
+	static final int EMPTY             = 0;
+	static final int DELETED           = -1;
+	// Arena header: magic, unused, generation
+	static final int ARENA_HEADER      = 16;
+	// Entry: key length, value length, key, value
+	static final int ENTRY_HEADER      = 8;
+
+	private final File          dir;
+	private final File          indexFile;
+	private final File          arenaFile;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private MappedByteBuffer index;
+	private MappedByteBuffer arena;
+	private int              capacity;
+	private int              size;
+	private int              tombstones;
+	private int              arenaEnd;
+	private long             garbage;
+	private long             generation;
+
+	public MappedDataProvider(File dir) {
+		this.dir = dir;
+		this.indexFile = new File(dir, INDEX_FILE);
+		this.arenaFile = new File(dir, ARENA_FILE);
+		open();
+	}
+
+	public MappedDataProvider(Executor executor, File dir) {
+		super(executor);
+		this.dir = dir;
+		this.indexFile = new File(dir, INDEX_FILE);
+		this.arenaFile = new File(dir, ARENA_FILE);
+		open();
+	}
+
+	void open() {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new RuntimeException("Failed to create directory " + dir);
+		}
+		recover();
+		if (indexFile.exists() != arenaFile.exists()) {
+			throw new IllegalStateException("Missing " + (indexFile.exists() ? arenaFile : indexFile));
+		}
+		if (!indexFile.exists()) {
+			generation = 1;
+			arena = map(arenaFile, DEFAULT_ARENA_SIZE);
+			arena.putLong(8, generation);
+			arena.putInt(0, MAGIC);
+			arenaEnd = ARENA_HEADER;
+			capacity = DEFAULT_CAPACITY;
+			index = map(indexFile, indexSize(capacity));
+			writeHeader(index);
+			index.putInt(0, MAGIC);
+			return;
+		}
+		arena = map(arenaFile, arenaFile.length());
+		index = map(indexFile, indexFile.length());
+		if (arena.getInt(0) != MAGIC || index.getInt(0) != MAGIC) {
+			throw new IllegalStateException("Not a mapped data directory: " + dir);
+		}
+		capacity = index.getInt(CAPACITY_OFFSET);
+		size = index.getInt(SIZE_OFFSET);
+		tombstones = index.getInt(TOMBSTONES_OFFSET);
+		arenaEnd = (int) index.getLong(ARENA_END_OFFSET);
+		garbage = index.getLong(GARBAGE_OFFSET);
+		generation = index.getLong(GENERATION_OFFSET);
+		if (arena.getLong(8) != generation) {
+			throw new IllegalStateException("Index and arena of " + dir + " don't match");
+		}
+	}
+
+	/**
+	 * Finishes or discards a rebuild which was interrupted before its files replaced the old ones
+	 */
+	void recover() {
+		File indexTemp = new File(dir, INDEX_FILE + TEMP_SUFFIX);
+		File arenaTemp = new File(dir, ARENA_FILE + TEMP_SUFFIX);
+		if (arenaTemp.exists()) {
+			long arenaGeneration = readGeneration(arenaTemp, 8);
+			if (arenaGeneration != 0 && arenaGeneration == readGeneration(indexTemp, GENERATION_OFFSET)) {
+				move(arenaTemp, arenaFile);
+			} else {
+				arenaTemp.delete();
+			}
+		}
+		if (indexTemp.exists()) {
+			long indexGeneration = readGeneration(indexTemp, GENERATION_OFFSET);
+			if (indexGeneration != 0 && arenaFile.exists() && indexGeneration == readGeneration(arenaFile, 8)) {
+				move(indexTemp, indexFile);
+			} else {
+				indexTemp.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return the generation stored in the file's header, or <code>0</code> if the file is missing or was not completely written
+	 */
+	static long readGeneration(File file, int offset) {
+		if (!file.exists()) { return 0; }
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(offset + 8);
+			while (header.hasRemaining()) {
+				if (channel.read(header) < 0) { return 0; }
+			}
+			return header.getInt(0) == MAGIC ? header.getLong(offset) : 0;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Maps the file, which stays mapped after its channel is closed. The file is extended with zeros if it is smaller.
+	 */
+	static MappedByteBuffer map(File file, long size) {
+		if (size > MAX_SIZE) {
+			throw new IllegalStateException("Mapped files are limited to " + MAX_SIZE + " bytes");
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Releases the mapping, the buffer must not be used afterwards. Must hold the write lock, so no reader still uses it.
+	 */
+	static void unmap(MappedByteBuffer buffer) {
+		if (INVOKE_CLEANER == null) { return; }
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (ReflectiveOperationException | RuntimeException ignored) {
+			// Released by the garbage collector instead
+		}
+	}
+
+	static void move(File source, File target) {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static long indexSize(int capacity) {
+		return INDEX_HEADER + (long) capacity * SLOT_SIZE;
+	}
+
+	void writeHeader(MappedByteBuffer index) {
+		index.putInt(CAPACITY_OFFSET, capacity);
+		index.putInt(SIZE_OFFSET, size);
+		index.putInt(TOMBSTONES_OFFSET, tombstones);
+		index.putLong(ARENA_END_OFFSET, arenaEnd);
+		index.putLong(GARBAGE_OFFSET, garbage);
+		index.putLong(GENERATION_OFFSET, generation);
+	}
+
+	static int hash(String key) {
+		int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	static int slotHash(ByteBuffer index, int slot) {
+		return index.getInt(INDEX_HEADER + slot * SLOT_SIZE);
+	}
+
+	static int slotEntry(ByteBuffer index, int slot) {
+		return (int) index.getLong(INDEX_HEADER + slot * SLOT_SIZE + 8);
+	}
+
+	static void setSlot(ByteBuffer index, int slot, int hash, int entry) {
+		index.putInt(INDEX_HEADER + slot * SLOT_SIZE, hash);
+		index.putLong(INDEX_HEADER + slot * SLOT_SIZE + 8, entry);
+	}
+
+	/**
+	 * Probes the table for the key, comparing the key bytes in the arena in place
+	 *
+	 * @return the key's slot, or <code>-(slot + 1)</code> with the slot to insert it into
+	 */
+	int find(byte[] key, int hash) {
+		int mask = capacity - 1;
+		int insert = -1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int entry = slotEntry(index, slot);
+			if (entry == EMPTY) {
+				return -((insert >= 0 ? insert : slot) + 1);
+			}
+			if (entry == DELETED) {
+				if (insert < 0) { insert = slot; }
+			} else if (slotHash(index, slot) == hash && keyEquals(entry, key)) {
+				return slot;
+			}
+		}
+	}
+
+	boolean keyEquals(int entry, byte[] key) {
+		if (arena.getInt(entry) != key.length) { return false; }
+		int start = entry + ENTRY_HEADER;
+		for (int i = 0; i < key.length; i++) {
+			if (arena.get(start + i) != key[i]) { return false; }
+		}
+		return true;
+	}
+
+	String readKey(int entry) {
+		return readString(entry + ENTRY_HEADER, arena.getInt(entry));
+	}
+
+	String readValue(int entry) {
+		int keyLength = arena.getInt(entry);
+		return readString(entry + ENTRY_HEADER + keyLength, arena.getInt(entry + 4));
+	}
+
+	String readString(int position, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer view = arena.duplicate();
+		view.position(position);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static int entrySize(ByteBuffer arena, int entry) {
+		return ENTRY_HEADER + arena.getInt(entry) + arena.getInt(entry + 4);
+	}
+
+	@Nullable
+	String read(String key) {
+		lock.readLock().lock();
+		try {
+			int slot = find(key.getBytes(StandardCharsets.UTF_8), hash(key));
+			return slot < 0 ? null : readValue(slotEntry(index, slot));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Must hold the write lock
+	 */
+	void write(String key, String value) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(key);
+		if (size + tombstones + 1 > capacity * LOAD_FACTOR) {
+			// Twice the slots, or the same number if the table is mostly tombstones
+			rebuildIndex(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity * 2 : capacity);
+		}
+		int entry = allocate(ENTRY_HEADER + keyBytes.length + valueBytes.length);
+		arena.putInt(entry, keyBytes.length);
+		arena.putInt(entry + 4, valueBytes.length);
+		ByteBuffer view = arena.duplicate();
+		view.position(entry + ENTRY_HEADER);
+		view.put(keyBytes);
+		view.put(valueBytes);
+
+		int slot = find(keyBytes, hash);
+		if (slot >= 0) {
+			garbage += entrySize(arena, slotEntry(index, slot));
+		} else {
+			slot = -slot - 1;
+			if (slotEntry(index, slot) == DELETED) {
+				tombstones--;
+			}
+			size++;
+		}
+		setSlot(index, slot, hash, entry);
+		writeHeader(index);
+	}
+
+	/**
+	 * Must hold the write lock
+	 *
+	 * @return the removed value
+	 */
+	@Nullable
+	String delete(String key) {
+		int slot = find(key.getBytes(StandardCharsets.UTF_8), hash(key));
+		if (slot < 0) { return null; }
+		int entry = slotEntry(index, slot);
+		String value = readValue(entry);
+		garbage += entrySize(arena, entry);
+		setSlot(index, slot, 0, DELETED);
+		size--;
+		tombstones++;
+		writeHeader(index);
+		return value;
+	}
+
+	/**
+	 * Reserves space at the end of the arena, making room first by rewriting or remapping it
+	 *
+	 * @return arena offset of the space
+	 */
+	int allocate(int length) {
+		if ((long) arenaEnd + length > arena.capacity()) {
+			if (garbage * 2 > arenaEnd - ARENA_HEADER) {
+				rebuildArena(length);
+			}
+			if ((long) arenaEnd + length > arena.capacity()) {
+				if ((long) arenaEnd + length > MAX_SIZE) {
+					throw new IllegalStateException("Arena is full");
+				}
+				MappedByteBuffer old = arena;
+				arena = map(arenaFile, Math.min(MAX_SIZE, Math.max((long) arena.capacity() * 2, (long) arenaEnd + length)));
+				unmap(old);
+			}
+		}
+		int entry = arenaEnd;
+		arenaEnd += length;
+		return entry;
+	}
+
+	/**
+	 * Writes a new index file with the given number of slots and replaces the old one
+	 */
+	void rebuildIndex(int newCapacity) {
+		File temp = new File(dir, INDEX_FILE + TEMP_SUFFIX);
+		temp.delete();
+		MappedByteBuffer newIndex = map(temp, indexSize(newCapacity));
+		int mask = newCapacity - 1;
+		for (int slot = 0; slot < capacity; slot++) {
+			int entry = slotEntry(index, slot);
+			if (entry == EMPTY || entry == DELETED) { continue; }
+			int hash = slotHash(index, slot);
+			int newSlot = hash & mask;
+			while (slotEntry(newIndex, newSlot) != EMPTY) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			setSlot(newIndex, newSlot, hash, entry);
+		}
+		capacity = newCapacity;
+		tombstones = 0;
+		replaceIndex(newIndex, temp, null);
+	}
+
+	/**
+	 * Copies the live entries into a new arena of the next generation, so overwritten and removed values are dropped
+	 *
+	 * @param reserve bytes to keep free after the copied entries
+	 */
+	void rebuildArena(int reserve) {
+		long live = (long) arenaEnd - ARENA_HEADER - garbage;
+		File arenaTemp = new File(dir, ARENA_FILE + TEMP_SUFFIX);
+		File indexTemp = new File(dir, INDEX_FILE + TEMP_SUFFIX);
+		arenaTemp.delete();
+		indexTemp.delete();
+		MappedByteBuffer newArena = map(arenaTemp, Math.min(MAX_SIZE, Math.max(DEFAULT_ARENA_SIZE, (ARENA_HEADER + live + reserve) * 2)));
+		MappedByteBuffer newIndex = map(indexTemp, indexSize(capacity));
+		int position = ARENA_HEADER;
+		int mask = capacity - 1;
+		for (int slot = 0; slot < capacity; slot++) {
+			int entry = slotEntry(index, slot);
+			if (entry == EMPTY || entry == DELETED) { continue; }
+			int length = entrySize(arena, entry);
+			ByteBuffer source = arena.duplicate();
+			source.position(entry).limit(entry + length);
+			ByteBuffer target = newArena.duplicate();
+			target.position(position);
+			target.put(source);
+
+			int hash = slotHash(index, slot);
+			int newSlot = hash & mask;
+			while (slotEntry(newIndex, newSlot) != EMPTY) {
+				newSlot = (newSlot + 1) & mask;
+			}
+			setSlot(newIndex, newSlot, hash, position);
+			position += length;
+		}
+		generation++;
+		newArena.putLong(8, generation);
+		newArena.force();
+		newArena.putInt(0, MAGIC);
+		newArena.force();
+
+		arenaEnd = position;
+		garbage = 0;
+		tombstones = 0;
+		MappedByteBuffer old = arena;
+		arena = newArena;
+		// The index is written last, see recover()
+		replaceIndex(newIndex, indexTemp, arenaTemp);
+		unmap(old);
+	}
+
+	/**
+	 * Completes the new index, forcing it to disk before and after its magic number is set so a partially written one is never used, and moves it into place
+	 *
+	 * @param arenaTemp new arena to move into place first, or <code>null</code>
+	 */
+	void replaceIndex(MappedByteBuffer newIndex, File indexTemp, @Nullable File arenaTemp) {
+		writeHeader(newIndex);
+		newIndex.force();
+		newIndex.putInt(0, MAGIC);
+		newIndex.force();
+		if (arenaTemp != null) {
+			move(arenaTemp, arenaFile);
+		}
+		move(indexTemp, indexFile);
+		MappedByteBuffer old = index;
+		index = newIndex;
+		unmap(old);
+	}
+
+	/**
+	 * Forces all changes to disk
+	 */
+	@Nonnull
+	public CompletionStage<Void> flush() {
+		return run(() -> {
+			lock.writeLock().lock();
+			try {
+				arena.force();
+				index.force();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		});
+	}
+
+	/**
+	 * @return the number of slots of the hash table
+	 */
+	public int getCapacity() {
+		lock.readLock().lock();
+		try {
+			return capacity;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the mapped size of the arena in bytes
+	 */
+	public int getArenaSize() {
+		lock.readLock().lock();
+		try {
+			return arena.capacity();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull String value) {
+		provide(putAsync(key, value), null);
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		provide(putAsync(key, valueCallable), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull Map<String, String> map) {
+		provide(putAllAsync(map), null);
+	}
+
+	@Override
+	public void putAll(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		provide(putAllAsync(mapCallable), null);
+	}
+
+	void putAll0(Map<String, String> map) {
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				write(entry.getKey(), entry.getValue());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void put0(String key, String value) {
+		lock.writeLock().lock();
+		try {
+			write(key, value);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Nullable
+	@Override
+	public String get(@Nonnull String key) {
+		return read(key);
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> getAll(@Nonnull Collection<String> keys) {
+		lock.readLock().lock();
+		try {
+			Map<String, String> map = new HashMap<>();
+			for (String key : keys) {
+				int slot = find(key.getBytes(StandardCharsets.UTF_8), hash(key));
+				if (slot >= 0) {
+					map.put(key, readValue(slotEntry(index, slot)));
+				}
+			}
+			return map;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(@Nonnull String key) {
+		lock.readLock().lock();
+		try {
+			return find(key.getBytes(StandardCharsets.UTF_8), hash(key)) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void get(@Nonnull String key, @Nonnull DataCallback<String> callback) {
+		provide(getAsync(key), callback);
+	}
+
+	@Override
+	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
+		provide(containsAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key, @Nonnull DataCallback<String> callback) {
+		provide(removeAsync(key), callback);
+	}
+
+	@Override
+	public void remove(@Nonnull String key) {
+		execute(key, () -> getAndRemove(key));
+	}
+
+	@Nullable
+	@Override
+	public String getAndRemove(@Nonnull String key) {
+		lock.writeLock().lock();
+		try {
+			return delete(key);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Collection<String> keys() {
+		lock.readLock().lock();
+		try {
+			List<String> keys = new ArrayList<>(size);
+			for (int slot = 0; slot < capacity; slot++) {
+				int entry = slotEntry(index, slot);
+				if (entry != EMPTY && entry != DELETED) {
+					keys.add(readKey(entry));
+				}
+			}
+			return keys;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, String> entries() {
+		lock.readLock().lock();
+		try {
+			Map<String, String> map = new HashMap<>();
+			for (int slot = 0; slot < capacity; slot++) {
+				int entry = slotEntry(index, slot);
+				if (entry != EMPTY && entry != DELETED) {
+					map.put(readKey(entry), readValue(entry));
+				}
+			}
+			return map;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Streams a snapshot of the keys, the batch size is not used
+	 */
+	@Nonnull
+	@Override
+	public Stream<String> streamKeys(int batchSize) {
+		return keys().stream();
+	}
+
+	/**
+	 * Reads the values of a snapshot of the keys lazily on the calling thread. Keys removed in between are skipped, the batch size is not used.
+	 */
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+		return keys().stream()//
+				.map(key -> {
+					String value = read(key);
+					return value == null ? null : (Map.Entry<String, String>) new AbstractMap.SimpleImmutableEntry<>(key, value);
+				})//
+				.filter(Objects::nonNull);
+	}
+
+	@Override
+	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
+		provide(keysAsync(), callback);
+	}
+
+	@Override
+	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
+		provide(entriesAsync(), callback);
+	}
+
+	@Override
+	public void size(@Nonnull DataCallback<Integer> callback) {
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+		return write(key, () -> put0(key, value));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		return write(key, () -> put0(key, valueCallable.provide()));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+		Map<String, String> copy = new HashMap<>(map);
+		return run(() -> putAll0(copy));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		return run(() -> putAll0(mapCallable.provide()));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> getAsync(@Nonnull String key) {
+		return supply(key, () -> read(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		return supply(() -> getAll(keyList));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> contains(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> removeAsync(@Nonnull String key) {
+		return supply(key, () -> getAndRemove(key));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(this::keys);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> entriesAsync() {
+		return supply(this::entries);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(this::size);
+	}
+}
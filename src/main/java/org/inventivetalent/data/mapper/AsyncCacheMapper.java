@@ -4,10 +4,14 @@ import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.inventivetalent.data.DataProvider;
 import org.inventivetalent.data.async.AsyncDataProvider;
+import org.inventivetalent.data.async.BoundedExecutor;
 import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.async.DataCallback;
+import org.inventivetalent.data.file.FileWatcher;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -15,6 +19,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 public class AsyncCacheMapper {
 
@@ -23,83 +28,158 @@ public class AsyncCacheMapper {
 	}
 
 	public static <V> CachedDataProvider<V> create(AsyncDataProvider<V> provider, CacheBuilder<Object, Object> cacheBuilder) {
-		return create(provider, cacheBuilder, Executors.newSingleThreadExecutor());
+		return create(provider, cacheBuilder, new BoundedExecutor());
 	}
 
 	public static <V> CachedDataProvider<V> create(AsyncDataProvider<V> provider, CacheBuilder<Object, Object> cacheBuilder, Executor cacheExecutor) {
-		LoadingCache<String, Optional<V>> cache = cacheBuilder.build(CacheLoader.asyncReloading(new CacheLoader<String, Optional<V>>() {
+		LoadingCache<String, Optional<V>> cache = cacheBuilder.build(new CacheLoader<String, Optional<V>>() {
 			@Override
 			public Optional<V> load(String key) throws Exception {
-				final Object[] value = new Object[1];
-				CountDownLatch latch = new CountDownLatch(1);
-				provider.get(key, v -> {
-					value[0] = v;
-					latch.countDown();
+				return Optional.fromNullable(provider.getAsync(key).toCompletableFuture().get(10, TimeUnit.SECONDS));
+			}
+
+			@Override
+			public ListenableFuture<Optional<V>> reload(String key, Optional<V> oldValue) {
+				SettableFuture<Optional<V>> future = SettableFuture.create();
+				provider.getAsync(key).whenComplete((value, throwable) -> {
+					if (throwable != null) {
+						future.setException(throwable);
+					} else {
+						future.set(Optional.fromNullable(value));
+					}
 				});
-				latch.await(10, TimeUnit.SECONDS);
-				return Optional.fromNullable((V) value[0]);
+				return future;
 			}
-		}, cacheExecutor));
+		});
 		return new CachedDataProvider<>(provider, cache, cacheExecutor);
 	}
 
+	/**
+	 * Keeps the values of the wrapped provider in a cache.
+	 * Values loaded from the provider are only cached if the key was not written, removed or invalidated while they were loaded,
+	 * which is tracked by a generation per stripe of keys.
+	 */
 	public static class CachedDataProvider<V> implements AsyncDataProvider<V>, DataProvider<V> {
 
+		static final int STRIPES = 64;
+
 		AsyncDataProvider<V>              provider;
 		LoadingCache<String, Optional<V>> cache;
 		Executor                          cacheExecutor;
+		final Object[]                    locks       = new Object[STRIPES];
+		final long[]                      generations = new long[STRIPES];
 
 		CachedDataProvider(AsyncDataProvider<V> provider, LoadingCache<String, Optional<V>> cache, Executor cacheExecutor) {
 			this.provider = provider;
 			this.cache = cache;
 			this.cacheExecutor = cacheExecutor;
+			for (int i = 0; i < STRIPES; i++) {
+				locks[i] = new Object();
+			}
+		}
+
+		int stripe(String key) {
+			return (key.hashCode() & 0x7fffffff) % STRIPES;
+		}
+
+		long generation(String key) {
+			int stripe = stripe(key);
+			synchronized (locks[stripe]) {
+				return generations[stripe];
+			}
+		}
+
+		/**
+		 * Changes the cached value of the key, so values loaded before are not cached anymore
+		 */
+		void update(String key, Runnable change) {
+			int stripe = stripe(key);
+			synchronized (locks[stripe]) {
+				generations[stripe]++;
+				change.run();
+			}
+		}
+
+		void cache(String key, @Nullable V value) {
+			update(key, () -> cache.put(key, Optional.fromNullable(value)));
+		}
+
+		/**
+		 * Caches a value loaded from the provider, unless the key changed since the load started
+		 */
+		void cacheLoaded(String key, long generation, @Nullable V value) {
+			int stripe = stripe(key);
+			synchronized (locks[stripe]) {
+				if (generations[stripe] == generation) {
+					cache.put(key, Optional.fromNullable(value));
+				}
+			}
+		}
+
+		/**
+		 * Passes the result of the stage to the callback on the cache executor, failures are forwarded to the executing thread's {@link Thread.UncaughtExceptionHandler}
+		 */
+		<T> void provide(CompletionStage<T> stage, DataCallback<T> callback) {
+			stage.whenCompleteAsync((value, throwable) -> {
+				if (throwable != null) {
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+					return;
+				}
+				callback.provide(value);
+			}, cacheExecutor);
+		}
+
+		@Override
+		public void execute(Runnable runnable) {
+			provider.execute(runnable);
+		}
+
+		@Override
+		public void execute(@Nonnull String key, Runnable runnable) {
+			provider.execute(key, runnable);
+		}
+
+		@Override
+		public Executor getExecutor() {
+			return provider.getExecutor();
 		}
 
 		@Override
 		public void put(@Nonnull String key, @Nonnull V value) {
-			cache.put(key, Optional.of(value));
+			cache(key, value);
 			provider.put(key, value);
 		}
 
 		@Override
 		public void put(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
-			provider.execute(() -> {
+			provider.execute(key, () -> {
 				V value = valueCallable.provide();
-				cache.put(key, Optional.of(value));
+				cache(key, value);
 				provider.put(key, value);
 			});
 		}
 
 		@Override
 		public void putAll(@Nonnull Map<String, V> map) {
-			Map<String, Optional<V>> optionalMap = new HashMap<>();
 			for (Map.Entry<String, V> entry : map.entrySet()) {
-				optionalMap.put(entry.getKey(), Optional.fromNullable(entry.getValue()));
+				cache(entry.getKey(), entry.getValue());
 			}
-			cache.putAll(optionalMap);
 		}
 
 		@Override
 		public void putAll(@Nonnull DataCallable<Map<String, V>> mapCallable) {
 			cacheExecutor.execute(() -> {
 				Map<String, V> map = mapCallable.provide();
-				Map<String, Optional<V>> optionalMap = new HashMap<>();
 				for (Map.Entry<String, V> entry : map.entrySet()) {
-					optionalMap.put(entry.getKey(), Optional.fromNullable(entry.getValue()));
+					cache(entry.getKey(), entry.getValue());
 				}
-				cache.putAll(optionalMap);
 			});
 		}
 
 		@Override
 		public void get(@Nonnull String key, @Nonnull DataCallback<V> callback) {
-			cacheExecutor.execute(() -> {
-				try {
-					callback.provide(cache.get(key).orNull());
-				} catch (ExecutionException e) {
-					throw new RuntimeException(e);
-				}
-			});
+			provide(getAsync(key), callback);
 		}
 
 		@Nullable
@@ -109,6 +189,23 @@ public class AsyncCacheMapper {
 			return value != null ? value.orNull() : null;
 		}
 
+		@Override
+		public void getAll(@Nonnull Collection<String> keys, @Nonnull DataCallback<Map<String, V>> callback) {
+			provide(getAllAsync(keys), callback);
+		}
+
+		@Nonnull
+		@Override
+		public Map<String, V> getAll(@Nonnull Collection<String> keys) {
+			Map<String, V> map = new HashMap<>();
+			for (Map.Entry<String, Optional<V>> entry : cache.getAllPresent(keys).entrySet()) {
+				if (entry.getValue().isPresent()) {
+					map.put(entry.getKey(), entry.getValue().get());
+				}
+			}
+			return map;
+		}
+
 		@Override
 		public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
 			provider.contains(key, callback);
@@ -122,13 +219,13 @@ public class AsyncCacheMapper {
 
 		@Override
 		public void remove(@Nonnull String key, @Nonnull DataCallback<V> callback) {
-			cache.invalidate(key);
+			invalidate(key);
 			provider.remove(key, callback);
 		}
 
 		@Override
 		public void remove(@Nonnull String key) {
-			cache.invalidate(key);
+			invalidate(key);
 			provider.remove(key);
 		}
 
@@ -136,7 +233,7 @@ public class AsyncCacheMapper {
 		@Override
 		public V getAndRemove(@Nonnull String key) {
 			Optional<V> value = cache.getIfPresent(key);
-			cache.invalidate(key);
+			invalidate(key);
 			provider.remove(key);
 			return value != null ? value.orNull() : null;
 		}
@@ -178,9 +275,129 @@ public class AsyncCacheMapper {
 			return (int) cache.size();
 		}
 
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull V value) {
+			cache(key, value);
+			return provider.putAsync(key, value);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<V> getAsync(@Nonnull String key) {
+			Optional<V> cached = cache.getIfPresent(key);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached.orNull());
+			}
+			long generation = generation(key);
+			return provider.getAsync(key).thenApply(value -> {
+				cacheLoaded(key, generation, value);
+				return value;
+			});
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Map<String, V>> getAllAsync(@Nonnull Collection<String> keys) {
+			Map<String, V> map = new HashMap<>();
+			Map<String, Long> missing = new HashMap<>();
+			for (String key : keys) {
+				Optional<V> cached = cache.getIfPresent(key);
+				if (cached == null) {
+					missing.put(key, generation(key));
+				} else if (cached.isPresent()) {
+					map.put(key, cached.get());
+				}
+			}
+			if (missing.isEmpty()) {
+				return CompletableFuture.completedFuture(map);
+			}
+			return provider.getAllAsync(missing.keySet()).thenApply(loaded -> {
+				for (Map.Entry<String, Long> entry : missing.entrySet()) {
+					String key = entry.getKey();
+					V value = loaded.get(key);
+					cacheLoaded(key, entry.getValue(), value);
+					if (value != null) {
+						map.put(key, value);
+					}
+				}
+				return map;
+			});
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+			return provider.containsAsync(key);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<V> removeAsync(@Nonnull String key) {
+			invalidate(key);
+			return provider.removeAsync(key);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Collection<String>> keysAsync() {
+			return provider.keysAsync();
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Map<String, V>> entriesAsync() {
+			return provider.entriesAsync();
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Integer> sizeAsync() {
+			return provider.sizeAsync();
+		}
+
+		@Nonnull
+		@Override
+		public Stream<String> streamKeys(int batchSize) {
+			return provider.streamKeys(batchSize);
+		}
+
+		@Nonnull
+		@Override
+		public Stream<Map.Entry<String, V>> streamEntries(int batchSize) {
+			return provider.streamEntries(batchSize);
+		}
+
 		public void refresh(String key) {
 			this.cache.refresh(key);
 		}
+
+		public void invalidate(String key) {
+			update(key, () -> this.cache.invalidate(key));
+		}
+
+		public void invalidateAll() {
+			for (int i = 0; i < STRIPES; i++) {
+				synchronized (locks[i]) {
+					generations[i]++;
+				}
+			}
+			this.cache.invalidateAll();
+		}
+
+		/**
+		 * Invalidates the keys the watcher reports as changed, or the whole cache if it lost events, so changes by other processes are loaded again
+		 */
+		public CachedDataProvider<V> subscribe(@Nonnull FileWatcher watcher) {
+			watcher.addListener(change -> {
+				if (change.getKind() == FileWatcher.Kind.OVERFLOW) {
+					invalidateAll();
+				} else {
+					invalidate(change.getKey());
+				}
+			});
+			return this;
+		}
 	}
 
 }
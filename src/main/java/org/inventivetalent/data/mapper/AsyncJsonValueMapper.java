@@ -15,10 +15,13 @@ import org.inventivetalent.data.sql.SQLDataProvider;
 import org.inventivetalent.data.sqlite.SQLiteDataProvider;
 
 import javax.annotation.Nonnull;
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public class AsyncJsonValueMapper {
 
@@ -52,6 +55,11 @@ public class AsyncJsonValueMapper {
 				provider.execute(runnable);
 			}
 
+			@Override
+			public void execute(@Nonnull String key, Runnable runnable) {
+				provider.execute(key, runnable);
+			}
+
 			@Override
 			public Executor getExecutor() {
 				return provider.getExecutor();
@@ -146,6 +154,18 @@ public class AsyncJsonValueMapper {
 			public void size(@Nonnull DataCallback<Integer> callback) {
 				provider.size(callback);
 			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Map<String, JsonObject>> getAllAsync(@Nonnull Collection<String> keys) {
+				return provider.getAllAsync(keys).thenApply(stringBMap -> {
+					Map<String, JsonObject> jsonMap = new HashMap<>();
+					for (Map.Entry<String, B> entry : stringBMap.entrySet()) {
+						jsonMap.put(entry.getKey(), parser.parse(entry.getValue().getValue()).getAsJsonObject());
+					}
+					return jsonMap;
+				});
+			}
 		};
 	}
 
@@ -163,6 +183,11 @@ public class AsyncJsonValueMapper {
 			provider.execute(runnable);
 		}
 
+		@Override
+		public void execute(@Nonnull String key, Runnable runnable) {
+			provider.execute(key, runnable);
+		}
+
 		@Override
 		public Executor getExecutor() {
 			return provider.getExecutor();
@@ -253,6 +278,88 @@ public class AsyncJsonValueMapper {
 		public void size(@Nonnull DataCallback<Integer> callback) {
 			provider.size(callback);
 		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull JsonObject value) {
+			return provider.putAsync(key, value.toString());
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<JsonObject> valueCallable) {
+			return provider.putAsync(key, new DataCallable<String>() {
+				@Nonnull
+				@Override
+				public String provide() {
+					return valueCallable.provide().toString();
+				}
+			});
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAllAsync(@Nonnull Map<String, JsonObject> map) {
+			Map<String, String> stringMap = new HashMap<>();
+			for (Map.Entry<String, JsonObject> entry : map.entrySet()) {
+				stringMap.put(entry.getKey(), entry.getValue().toString());
+			}
+			return provider.putAllAsync(stringMap);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<JsonObject> getAsync(@Nonnull String key) {
+			return provider.getAsync(key).thenApply(s -> s != null ? parser.parse(s).getAsJsonObject() : null);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Map<String, JsonObject>> getAllAsync(@Nonnull Collection<String> keys) {
+			return provider.getAllAsync(keys).thenApply(map -> {
+				Map<String, JsonObject> jsonMap = new HashMap<>();
+				for (Map.Entry<String, String> entry : map.entrySet()) {
+					jsonMap.put(entry.getKey(), parser.parse(entry.getValue()).getAsJsonObject());
+				}
+				return jsonMap;
+			});
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+			return provider.containsAsync(key);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<JsonObject> removeAsync(@Nonnull String key) {
+			return provider.removeAsync(key).thenApply(s -> s != null ? parser.parse(s).getAsJsonObject() : null);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Collection<String>> keysAsync() {
+			return provider.keysAsync();
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Integer> sizeAsync() {
+			return provider.sizeAsync();
+		}
+
+		@Nonnull
+		@Override
+		public Stream<String> streamKeys(int batchSize) {
+			return provider.streamKeys(batchSize);
+		}
+
+		@Nonnull
+		@Override
+		public Stream<Map.Entry<String, JsonObject>> streamEntries(int batchSize) {
+			return provider.streamEntries(batchSize).map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), parser.parse(entry.getValue()).getAsJsonObject()));
+		}
 	}
 
 }
@@ -14,10 +14,13 @@ import org.inventivetalent.data.sql.SQLDataProvider;
 import org.inventivetalent.data.sqlite.SQLiteDataProvider;
 
 import javax.annotation.Nonnull;
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public abstract class AsyncStringValueMapper {
 
@@ -45,6 +48,11 @@ public abstract class AsyncStringValueMapper {
 				provider.execute(runnable);
 			}
 
+			@Override
+			public void execute(@Nonnull String key, Runnable runnable) {
+				provider.execute(key, runnable);
+			}
+
 			@Override
 			public Executor getExecutor() {
 				return provider.getExecutor();
@@ -145,6 +153,88 @@ public abstract class AsyncStringValueMapper {
 			public void size(@Nonnull DataCallback<Integer> callback) {
 				provider.size(callback);
 			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+				return provider.putAsync(key, makeValue(value));
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+				return provider.putAsync(key, new DataCallable<JsonObject>() {
+					@Nonnull
+					@Override
+					public JsonObject provide() {
+						return makeValue(valueCallable.provide());
+					}
+				});
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+				Map<String, JsonObject> jsonMap = new HashMap<>();
+				for (Map.Entry<String, String> entry : map.entrySet()) {
+					jsonMap.put(entry.getKey(), makeValue(entry.getValue()));
+				}
+				return provider.putAllAsync(jsonMap);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<String> getAsync(@Nonnull String key) {
+				return provider.getAsync(key).thenApply(jsonObject -> jsonObject != null ? getValue(jsonObject) : null);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+				return provider.getAllAsync(keys).thenApply(stringJsonObjectMap -> {
+					Map<String, String> stringMap = new HashMap<>();
+					for (Map.Entry<String, JsonObject> entry : stringJsonObjectMap.entrySet()) {
+						stringMap.put(entry.getKey(), getValue(entry.getValue()));
+					}
+					return stringMap;
+				});
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+				return provider.containsAsync(key);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<String> removeAsync(@Nonnull String key) {
+				return provider.removeAsync(key).thenApply(jsonObject -> jsonObject != null ? getValue(jsonObject) : null);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Collection<String>> keysAsync() {
+				return provider.keysAsync();
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Integer> sizeAsync() {
+				return provider.sizeAsync();
+			}
+
+			@Nonnull
+			@Override
+			public Stream<String> streamKeys(int batchSize) {
+				return provider.streamKeys(batchSize);
+			}
+
+			@Nonnull
+			@Override
+			public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+				return provider.streamEntries(batchSize).map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), getValue(entry.getValue())));
+			}
 		};
 	}
 
@@ -156,6 +246,11 @@ public abstract class AsyncStringValueMapper {
 				provider.execute(runnable);
 			}
 
+			@Override
+			public void execute(@Nonnull String key, Runnable runnable) {
+				provider.execute(key, runnable);
+			}
+
 			@Override
 			public Executor getExecutor() {
 				return provider.getExecutor();
@@ -250,6 +345,18 @@ public abstract class AsyncStringValueMapper {
 			public void size(@Nonnull DataCallback<Integer> callback) {
 				provider.size(callback);
 			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+				return provider.getAllAsync(keys).thenApply(stringBMap -> {
+					Map<String, String> stringMap = new HashMap<>();
+					for (Map.Entry<String, B> entry : stringBMap.entrySet()) {
+						stringMap.put(entry.getKey(), entry.getValue().getValue());
+					}
+					return stringMap;
+				});
+			}
 		};
 	}
 
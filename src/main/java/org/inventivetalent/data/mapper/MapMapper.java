@@ -8,8 +8,12 @@ import org.inventivetalent.data.async.DataCallback;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public class MapMapper {
 
@@ -80,6 +84,74 @@ public class MapMapper {
 			public void size(@Nonnull DataCallback<Integer> callback) {
 				callback.provide(map.size());
 			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull V value) {
+				map.put(key, value);
+				return CompletableFuture.completedFuture(null);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Void> putAllAsync(@Nonnull Map<String, V> map0) {
+				map.putAll(map0);
+				return CompletableFuture.completedFuture(null);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<V> getAsync(@Nonnull String key) {
+				return CompletableFuture.completedFuture(map.get(key));
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Map<String, V>> getAllAsync(@Nonnull Collection<String> keys) {
+				return CompletableFuture.completedFuture(getAll0(map, keys));
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+				return CompletableFuture.completedFuture(map.containsKey(key));
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<V> removeAsync(@Nonnull String key) {
+				return CompletableFuture.completedFuture(map.remove(key));
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Collection<String>> keysAsync() {
+				return CompletableFuture.completedFuture(map.keySet());
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Map<String, V>> entriesAsync() {
+				return CompletableFuture.completedFuture(map);
+			}
+
+			@Nonnull
+			@Override
+			public CompletionStage<Integer> sizeAsync() {
+				return CompletableFuture.completedFuture(map.size());
+			}
+
+			@Nonnull
+			@Override
+			public Stream<String> streamKeys(int batchSize) {
+				return map.keySet().stream();
+			}
+
+			@Nonnull
+			@Override
+			public Stream<Map.Entry<String, V>> streamEntries(int batchSize) {
+				return map.entrySet().stream();
+			}
 		};
 	}
 
@@ -101,6 +173,12 @@ map.putAll(map0);
 				return map.get(key);
 			}
 
+			@Nonnull
+			@Override
+			public Map<String, V> getAll(@Nonnull Collection<String> keys) {
+				return getAll0(map, keys);
+			}
+
 			@Override
 			public boolean contains(@Nonnull String key) {
 				return map.containsKey(key);
@@ -136,4 +214,15 @@ map.putAll(map0);
 		};
 	}
 
+	static <V> Map<String, V> getAll0(Map<String, V> map, Collection<String> keys) {
+		Map<String, V> values = new HashMap<>();
+		for (String key : keys) {
+			V value = map.get(key);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		return values;
+	}
+
 }
@@ -0,0 +1,361 @@
+package org.inventivetalent.data.mapper;
+
+import org.inventivetalent.data.async.AsyncDataProvider;
+import org.inventivetalent.data.async.DataCallable;
+import org.inventivetalent.data.async.DataCallback;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class WriteBehindMapper {
+
+	public static final int  DEFAULT_MAX_PENDING    = 1000;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	public static <V> WriteBehindDataProvider<V> create(AsyncDataProvider<V> provider) {
+		return create(provider, DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param provider      provider to write to
+	 * @param maxPending    number of pending keys which triggers a flush
+	 * @param flushInterval interval in which pending writes are flushed
+	 * @param unit          unit of the interval
+	 */
+	public static <V> WriteBehindDataProvider<V> create(AsyncDataProvider<V> provider, int maxPending, long flushInterval, TimeUnit unit) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "WriteBehindMapper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		WriteBehindDataProvider<V> writeBehind = new WriteBehindDataProvider<>(provider, maxPending, scheduler);
+		scheduler.scheduleWithFixedDelay(writeBehind::flush, flushInterval, flushInterval, unit);
+		return writeBehind;
+	}
+
+	/**
+	 * Buffers writes and only passes the latest value of each key on to the provider, in batches via {@link AsyncDataProvider#putAllAsync(Map)}.
+	 * Reads of pending keys are served from the buffer, listing operations flush the buffer first.
+	 * <p>
+	 * Flushes and removes are passed on to the provider one after another, each once the previous one completed, so a remove is never overtaken by a batch still holding the key.
+	 * They are called from the common fork-join pool, so a provider blocking on a full queue doesn't block the caller while it holds the buffer's lock.
+	 */
+	public static class WriteBehindDataProvider<V> implements AsyncDataProvider<V> {
+
+		final AsyncDataProvider<V>     provider;
+		final int                      maxPending;
+		final ScheduledExecutorService scheduler;
+
+		final Map<String, V>          pending     = new ConcurrentHashMap<>();
+		final Map<String, V>          inFlight    = new ConcurrentHashMap<>();
+		final Object                  flushLock   = new Object();
+		final AtomicBoolean           flushQueued = new AtomicBoolean();
+		CompletableFuture<Void>       nextFlush   = new CompletableFuture<>();
+		// Completes once the provider calls dispatched so far completed
+		CompletableFuture<Void>       dispatched  = CompletableFuture.completedFuture(null);
+
+		WriteBehindDataProvider(AsyncDataProvider<V> provider, int maxPending, ScheduledExecutorService scheduler) {
+			this.provider = provider;
+			this.maxPending = maxPending;
+			this.scheduler = scheduler;
+		}
+
+		/**
+		 * Writes all pending values to the provider
+		 *
+		 * @return a stage which completes once the values have been written
+		 */
+		@Nonnull
+		public CompletionStage<Void> flush() {
+			CompletableFuture<Void> flushed;
+			CompletableFuture<Void> written = null;
+			Map<String, V> batch = new HashMap<>();
+			synchronized (flushLock) {
+				flushed = nextFlush;
+				nextFlush = new CompletableFuture<>();
+				for (Map.Entry<String, V> entry : pending.entrySet()) {
+					if (pending.remove(entry.getKey(), entry.getValue())) {
+						batch.put(entry.getKey(), entry.getValue());
+					}
+				}
+				if (!batch.isEmpty()) {
+					inFlight.putAll(batch);
+					written = dispatch(() -> provider.putAllAsync(batch));
+				}
+			}
+			if (written == null) {
+				flushed.complete(null);
+				return flushed;
+			}
+			written.whenComplete((v, throwable) -> {
+				synchronized (flushLock) {
+					for (Map.Entry<String, V> entry : batch.entrySet()) {
+						// Removes and later flushes of the key take the value out of inFlight
+						boolean current = inFlight.remove(entry.getKey(), entry.getValue());
+						if (throwable != null && current) {
+							// Keep the value for the next flush, unless it has been replaced in the meantime
+							pending.putIfAbsent(entry.getKey(), entry.getValue());
+						}
+					}
+				}
+				if (throwable != null) {
+					flushed.completeExceptionally(throwable);
+				} else {
+					flushed.complete(null);
+				}
+			});
+			return flushed;
+		}
+
+		/**
+		 * Calls the provider once the calls dispatched before have completed, has to be called while holding the flush lock to keep the order
+		 */
+		<T> CompletableFuture<T> dispatch(Supplier<CompletionStage<T>> call) {
+			CompletableFuture<T> result = dispatched.thenComposeAsync(v -> call.get());
+			dispatched = result.handle((value, throwable) -> null);
+			return result;
+		}
+
+		/**
+		 * Passes the result of the stage to the callback, failures are forwarded to the completing thread's {@link Thread.UncaughtExceptionHandler}
+		 */
+		<T> void provide(CompletionStage<T> stage, DataCallback<T> callback) {
+			stage.whenComplete((value, throwable) -> {
+				if (throwable != null) {
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+					return;
+				}
+				if (callback != null) {
+					callback.provide(value);
+				}
+			});
+		}
+
+		/**
+		 * Flushes the pending values and stops the flush timer
+		 */
+		@Nonnull
+		public CompletionStage<Void> close() {
+			scheduler.shutdown();
+			return flush();
+		}
+
+		public int getPendingCount() {
+			return pending.size();
+		}
+
+		V getBuffered(String key) {
+			V value = pending.get(key);
+			return value != null ? value : inFlight.get(key);
+		}
+
+		void checkSize() {
+			if (pending.size() >= maxPending && flushQueued.compareAndSet(false, true)) {
+				scheduler.execute(() -> {
+					flushQueued.set(false);
+					flush();
+				});
+			}
+		}
+
+		@Override
+		public void execute(Runnable runnable) {
+			provider.execute(runnable);
+		}
+
+		@Override
+		public void execute(@Nonnull String key, Runnable runnable) {
+			provider.execute(key, runnable);
+		}
+
+		@Override
+		public Executor getExecutor() {
+			return provider.getExecutor();
+		}
+
+		@Override
+		public void put(@Nonnull String key, @Nonnull V value) {
+			pending.put(key, value);
+			checkSize();
+		}
+
+		@Override
+		public void put(@Nonnull String key, @Nonnull DataCallable<V> valueCallable) {
+			provider.execute(key, () -> put(key, valueCallable.provide()));
+		}
+
+		@Override
+		public void putAll(@Nonnull Map<String, V> map) {
+			pending.putAll(map);
+			checkSize();
+		}
+
+		@Override
+		public void putAll(@Nonnull DataCallable<Map<String, V>> mapCallable) {
+			provider.execute(() -> putAll(mapCallable.provide()));
+		}
+
+		@Override
+		public void get(@Nonnull String key, @Nonnull DataCallback<V> callback) {
+			provide(getAsync(key), callback);
+		}
+
+		@Override
+		public void getAll(@Nonnull Collection<String> keys, @Nonnull DataCallback<Map<String, V>> callback) {
+			provide(getAllAsync(keys), callback);
+		}
+
+		@Override
+		public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
+			provide(containsAsync(key), callback);
+		}
+
+		@Override
+		public void remove(@Nonnull String key, @Nonnull DataCallback<V> callback) {
+			provide(removeAsync(key), callback);
+		}
+
+		@Override
+		public void remove(@Nonnull String key) {
+			provide(removeAsync(key), null);
+		}
+
+		@Override
+		public void keys(@Nonnull DataCallback<Collection<String>> callback) {
+			provide(keysAsync(), callback);
+		}
+
+		@Override
+		public void entries(@Nonnull DataCallback<Map<String, V>> callback) {
+			provide(entriesAsync(), callback);
+		}
+
+		@Override
+		public void size(@Nonnull DataCallback<Integer> callback) {
+			provide(sizeAsync(), callback);
+		}
+
+		/**
+		 * @return a stage which completes once the value has been flushed to the provider
+		 */
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull V value) {
+			CompletionStage<Void> flushed;
+			synchronized (flushLock) {
+				pending.put(key, value);
+				flushed = nextFlush;
+			}
+			checkSize();
+			return flushed;
+		}
+
+		/**
+		 * @return a stage which completes once the values have been flushed to the provider
+		 */
+		@Nonnull
+		@Override
+		public CompletionStage<Void> putAllAsync(@Nonnull Map<String, V> map) {
+			CompletionStage<Void> flushed;
+			synchronized (flushLock) {
+				pending.putAll(map);
+				flushed = nextFlush;
+			}
+			checkSize();
+			return flushed;
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<V> getAsync(@Nonnull String key) {
+			V value = getBuffered(key);
+			if (value != null) {
+				return CompletableFuture.completedFuture(value);
+			}
+			return provider.getAsync(key);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Map<String, V>> getAllAsync(@Nonnull Collection<String> keys) {
+			Map<String, V> map = new HashMap<>();
+			List<String> missing = new ArrayList<>();
+			for (String key : keys) {
+				V value = getBuffered(key);
+				if (value != null) {
+					map.put(key, value);
+				} else {
+					missing.add(key);
+				}
+			}
+			if (missing.isEmpty()) {
+				return CompletableFuture.completedFuture(map);
+			}
+			return provider.getAllAsync(missing).thenApply(loaded -> {
+				map.putAll(loaded);
+				return map;
+			});
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+			if (getBuffered(key) != null) {
+				return CompletableFuture.completedFuture(true);
+			}
+			return provider.containsAsync(key);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<V> removeAsync(@Nonnull String key) {
+			V buffered;
+			CompletionStage<V> removed;
+			synchronized (flushLock) {
+				buffered = pending.remove(key);
+				inFlight.remove(key);
+				// After the batches which may still write the key
+				removed = dispatch(() -> provider.removeAsync(key));
+			}
+			return removed.thenApply(value -> buffered != null ? buffered : value);
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Collection<String>> keysAsync() {
+			return flush().thenCompose(v -> provider.keysAsync());
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Map<String, V>> entriesAsync() {
+			return flush().thenCompose(v -> provider.entriesAsync());
+		}
+
+		@Nonnull
+		@Override
+		public CompletionStage<Integer> sizeAsync() {
+			return flush().thenCompose(v -> provider.sizeAsync());
+		}
+
+		@Nonnull
+		@Override
+		public Stream<String> streamKeys(int batchSize) {
+			flush().toCompletableFuture().join();
+			return provider.streamKeys(batchSize);
+		}
+
+		@Nonnull
+		@Override
+		public Stream<Map.Entry<String, V>> streamEntries(int batchSize) {
+			flush().toCompletableFuture().join();
+			return provider.streamEntries(batchSize);
+		}
+	}
+
+}
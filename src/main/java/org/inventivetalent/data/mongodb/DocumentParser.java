@@ -2,26 +2,39 @@ package org.inventivetalent.data.mongodb;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.mongodb.MongoClient;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonDocumentWriter;
 import org.bson.Document;
 import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.DecoderContext;
 import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 
+/**
+ * Converts between {@link Document}s and Gson trees with the {@link JsonObjectCodec}, without an intermediate JSON string.
+ * Collections using {@link #CODEC_REGISTRY} can read and write {@link JsonObject}s directly.
+ */
 public class DocumentParser {
 
-	final static CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(MongoClient.getDefaultCodecRegistry());
-	final static DocumentCodec CODEC          = new DocumentCodec(CODEC_REGISTRY, new BsonTypeClassMap());
+	public final static JsonObjectCodec JSON_CODEC     = new JsonObjectCodec();
+	public final static CodecRegistry   CODEC_REGISTRY = CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(JSON_CODEC), MongoClient.getDefaultCodecRegistry());
+	final static        DocumentCodec   CODEC          = new DocumentCodec(CODEC_REGISTRY, new BsonTypeClassMap());
 
 	public static JsonObject toJson(Document document) {
 		if (document == null) { return null; }
-		return new JsonParser().parse(document.toJson(CODEC)).getAsJsonObject();
+		BsonDocument bsonDocument = BsonDocumentWrapper.asBsonDocument(document, CODEC_REGISTRY);
+		return JSON_CODEC.decode(new BsonDocumentReader(bsonDocument), DecoderContext.builder().build());
 	}
 
 	public static Document toDocument(JsonElement jsonObject) {
-		return Document.parse(jsonObject.toString(), CODEC);
+		BsonDocument bsonDocument = new BsonDocument();
+		JSON_CODEC.encode(new BsonDocumentWriter(bsonDocument), jsonObject.getAsJsonObject(), EncoderContext.builder().build());
+		return CODEC.decode(new BsonDocumentReader(bsonDocument), DecoderContext.builder().build());
 	}
 
 }
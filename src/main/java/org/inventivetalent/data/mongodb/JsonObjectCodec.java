@@ -0,0 +1,212 @@
+package org.inventivetalent.data.mongodb;
+
+import com.google.gson.*;
+import org.bson.*;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Reads and writes Gson trees directly from and to BSON, without going through a JSON string.
+ * Types without a JSON equivalent are represented in relaxed extended JSON, e.g. <code>{"$oid": "..."}</code>, the same way {@link Document#toJson()} does.
+ */
+public class JsonObjectCodec implements Codec<JsonObject> {
+
+	private static final BsonValueCodec     BSON_VALUE_CODEC = new BsonValueCodec();
+	private static final JsonWriterSettings RELAXED          = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+
+	// Latest date relaxed extended JSON prints as an ISO-8601 string
+	private static final long MAX_ISO_DATE = 253402300799999L;
+
+	@Override
+	public JsonObject decode(BsonReader reader, DecoderContext decoderContext) {
+		return readDocument(reader);
+	}
+
+	JsonObject readDocument(BsonReader reader) {
+		JsonObject object = new JsonObject();
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			object.add(reader.readName(), readValue(reader));
+		}
+		reader.readEndDocument();
+		return object;
+	}
+
+	JsonElement readValue(BsonReader reader) {
+		switch (reader.getCurrentBsonType()) {
+			case DOCUMENT:
+				return readDocument(reader);
+			case ARRAY:
+				JsonArray array = new JsonArray();
+				reader.readStartArray();
+				while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+					array.add(readValue(reader));
+				}
+				reader.readEndArray();
+				return array;
+			case STRING:
+				return new JsonPrimitive(reader.readString());
+			case INT32:
+				return new JsonPrimitive(reader.readInt32());
+			case INT64:
+				return new JsonPrimitive(reader.readInt64());
+			case DOUBLE:
+				double value = reader.readDouble();
+				if (Double.isNaN(value) || Double.isInfinite(value)) {
+					return wrap("$numberDouble", new JsonPrimitive(Double.toString(value)));
+				}
+				return new JsonPrimitive(value);
+			case BOOLEAN:
+				return new JsonPrimitive(reader.readBoolean());
+			case NULL:
+				reader.readNull();
+				return JsonNull.INSTANCE;
+			case OBJECT_ID:
+				return wrap("$oid", new JsonPrimitive(reader.readObjectId().toHexString()));
+			case DATE_TIME:
+				long date = reader.readDateTime();
+				if (date >= 0 && date <= MAX_ISO_DATE) {
+					return wrap("$date", new JsonPrimitive(Instant.ofEpochMilli(date).toString()));
+				}
+				return wrap("$date", wrap("$numberLong", new JsonPrimitive(Long.toString(date))));
+			case DECIMAL128:
+				return wrap("$numberDecimal", new JsonPrimitive(reader.readDecimal128().toString()));
+			default:
+				// Rare types (binary, regex, timestamp, ...) go through the driver's extended JSON
+				BsonValue bsonValue = BSON_VALUE_CODEC.decode(reader, DecoderContext.builder().build());
+				return new JsonParser().parse(new BsonDocument("v", bsonValue).toJson(RELAXED)).getAsJsonObject().get("v");
+		}
+	}
+
+	static JsonObject wrap(String key, JsonElement value) {
+		JsonObject object = new JsonObject();
+		object.add(key, value);
+		return object;
+	}
+
+	@Override
+	public void encode(BsonWriter writer, JsonObject value, EncoderContext encoderContext) {
+		writeDocument(writer, value);
+	}
+
+	void writeDocument(BsonWriter writer, JsonObject object) {
+		writer.writeStartDocument();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+			writer.writeName(entry.getKey());
+			writeValue(writer, entry.getValue());
+		}
+		writer.writeEndDocument();
+	}
+
+	void writeValue(BsonWriter writer, JsonElement element) {
+		if (element == null || element.isJsonNull()) {
+			writer.writeNull();
+		} else if (element.isJsonArray()) {
+			writer.writeStartArray();
+			for (JsonElement child : element.getAsJsonArray()) {
+				writeValue(writer, child);
+			}
+			writer.writeEndArray();
+		} else if (element.isJsonObject()) {
+			JsonObject object = element.getAsJsonObject();
+			if (!writeExtended(writer, object)) {
+				writeDocument(writer, object);
+			}
+		} else {
+			JsonPrimitive primitive = element.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				writer.writeBoolean(primitive.getAsBoolean());
+			} else if (primitive.isNumber()) {
+				writeNumber(writer, primitive.getAsNumber());
+			} else {
+				writer.writeString(primitive.getAsString());
+			}
+		}
+	}
+
+	/**
+	 * Writes integral numbers as int32 or int64 and everything else as double, like {@link Document#parse(String)} does
+	 */
+	void writeNumber(BsonWriter writer, Number number) {
+		if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+			writer.writeInt32(number.intValue());
+			return;
+		}
+		if (number instanceof Long) {
+			writer.writeInt64(number.longValue());
+			return;
+		}
+		if (number instanceof Double || number instanceof Float) {
+			writer.writeDouble(number.doubleValue());
+			return;
+		}
+		String string = number.toString();
+		if (string.indexOf('.') < 0 && string.indexOf('e') < 0 && string.indexOf('E') < 0) {
+			try {
+				long value = Long.parseLong(string);
+				if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+					writer.writeInt32((int) value);
+				} else {
+					writer.writeInt64(value);
+				}
+				return;
+			} catch (NumberFormatException ignored) {
+				// Too large for int64
+			}
+		}
+		writer.writeDouble(number.doubleValue());
+	}
+
+	/**
+	 * Writes single-key extended JSON objects such as <code>{"$oid": "..."}</code> as their BSON type
+	 *
+	 * @return <code>false</code> if the object is a regular document
+	 */
+	boolean writeExtended(BsonWriter writer, JsonObject object) {
+		if (object.size() == 0) { return false; }
+		Map.Entry<String, JsonElement> first = object.entrySet().iterator().next();
+		if (!first.getKey().startsWith("$")) { return false; }
+		JsonElement value = first.getValue();
+		if (object.size() == 1 && value.isJsonPrimitive()) {
+			String string = value.getAsString();
+			switch (first.getKey()) {
+				case "$oid":
+					writer.writeObjectId(new ObjectId(string));
+					return true;
+				case "$numberLong":
+					writer.writeInt64(Long.parseLong(string));
+					return true;
+				case "$numberInt":
+					writer.writeInt32(Integer.parseInt(string));
+					return true;
+				case "$numberDouble":
+					writer.writeDouble(Double.parseDouble(string));
+					return true;
+				case "$numberDecimal":
+					writer.writeDecimal128(Decimal128.parse(string));
+					return true;
+				case "$date":
+					writer.writeDateTime(value.getAsJsonPrimitive().isNumber() ? value.getAsLong() : Instant.parse(string).toEpochMilli());
+					return true;
+			}
+		}
+		// Other extended types, or documents which just start with a $ key, are left to the driver
+		BsonValue bsonValue = BsonDocument.parse("{\"v\": " + object + "}").get("v");
+		BSON_VALUE_CODEC.encode(writer, bsonValue, EncoderContext.builder().build());
+		return true;
+	}
+
+	@Override
+	public Class<JsonObject> getEncoderClass() {
+		return JsonObject.class;
+	}
+}
@@ -1,130 +1,346 @@
 package org.inventivetalent.data.mongodb;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoCredential;
 import com.mongodb.ServerAddress;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.inventivetalent.data.async.AbstractAsyncDataProvider;
 import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.async.DataCallback;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MongoDbDataProvider extends AbstractAsyncDataProvider<JsonObject> {
 
-	private static final UpdateOptions UPSERT_OPTIONS = new UpdateOptions().upsert(true);
+	private static final UpdateOptions    UPSERT_OPTIONS     = new UpdateOptions().upsert(true);
+	private static final BulkWriteOptions UNORDERED_OPTIONS  = new BulkWriteOptions().ordered(false);
+	private static final IndexOptions     KEY_INDEX_OPTIONS  = new IndexOptions().unique(true);
+	public static final  int              DEFAULT_BATCH_SIZE = 100000;
 
-	private final MongoClient               client;
-	private final MongoCollection<Document> collection;
+	private final MongoClient                 client;
+	private final MongoCollection<Document>   collection;
+	private final MongoCollection<JsonObject> jsonCollection;
 	private String keyField = "_id";
+	private int    batchSize;
 
 	public MongoDbDataProvider(MongoClient client, String database, String collection) {
 		this.client = client;
-		this.collection = this.client.getDatabase(database).getCollection(collection);
+		this.collection = this.client.getDatabase(database).getCollection(collection).withCodecRegistry(DocumentParser.CODEC_REGISTRY);
+		this.jsonCollection = this.collection.withDocumentClass(JsonObject.class);
 	}
 
 	public MongoDbDataProvider(Executor executor, MongoClient client, String database, String collection) {
 		super(executor);
 		this.client = client;
-		this.collection = this.client.getDatabase(database).getCollection(collection);
+		this.collection = this.client.getDatabase(database).getCollection(collection).withCodecRegistry(DocumentParser.CODEC_REGISTRY);
+		this.jsonCollection = this.collection.withDocumentClass(JsonObject.class);
 	}
 
 	public MongoDbDataProvider(String host, int port, String user, char[] pass, String authDatabase, String database, String collection) {
 		MongoCredential credential = user != null && pass != null && authDatabase != null ? MongoCredential.createScramSha1Credential(user, authDatabase, pass) : null;
 		this.client = credential != null ? new MongoClient(new ServerAddress(host, port), Collections.singletonList(credential)) : new MongoClient(new ServerAddress(host, port));
-		this.collection = this.client.getDatabase(database).getCollection(collection);
+		this.collection = this.client.getDatabase(database).getCollection(collection).withCodecRegistry(DocumentParser.CODEC_REGISTRY);
+		this.jsonCollection = this.collection.withDocumentClass(JsonObject.class);
 	}
 
 	public MongoDbDataProvider(Executor executor, String host, int port, String user, char[] pass, String authDatabase, String database, String collection) {
 		super(executor);
 		MongoCredential credential = user != null && pass != null && authDatabase != null ? MongoCredential.createScramSha1Credential(user, authDatabase, pass) : null;
 		this.client = credential != null ? new MongoClient(new ServerAddress(host, port), Collections.singletonList(credential)) : new MongoClient(new ServerAddress(host, port));
-		this.collection = this.client.getDatabase(database).getCollection(collection);
+		this.collection = this.client.getDatabase(database).getCollection(collection).withCodecRegistry(DocumentParser.CODEC_REGISTRY);
+		this.jsonCollection = this.collection.withDocumentClass(JsonObject.class);
 	}
 
+	/**
+	 * Sets the field holding the key, and creates a unique index on it unless it is {@code _id} (a no-op if the index already exists).
+	 * The index is created on the provider's executor, failures are passed to its thread's {@link Thread.UncaughtExceptionHandler}.
+	 */
 	public MongoDbDataProvider setKeyField(String keyField) {
 		this.keyField = keyField;
+		if (!"_id".equals(keyField)) {
+			provide(run(() -> this.collection.createIndex(Indexes.ascending(keyField), KEY_INDEX_OPTIONS)), null);
+		}
+		return this;
+	}
+
+	public String getKeyField() {
+		return keyField;
+	}
+
+	/**
+	 * @param batchSize maximum number of upserts sent per {@code bulkWrite} by {@link #putAll(Map)}, or <code>0</code> to use the server's {@code maxWriteBatchSize}
+	 */
+	public MongoDbDataProvider setBatchSize(int batchSize) {
+		if (batchSize < 0) {
+			throw new IllegalArgumentException("batchSize must not be negative");
+		}
+		this.batchSize = batchSize;
 		return this;
 	}
 
+	/**
+	 * @return the configured batch size, or the server's {@code maxWriteBatchSize} which is queried once
+	 */
+	public int getBatchSize() {
+		if (batchSize == 0) {
+			Document isMaster = this.client.getDatabase(this.collection.getNamespace().getDatabaseName()).runCommand(new Document("isMaster", 1));
+			Number maxWriteBatchSize = isMaster.get("maxWriteBatchSize", Number.class);
+			batchSize = maxWriteBatchSize != null ? maxWriteBatchSize.intValue() : DEFAULT_BATCH_SIZE;
+		}
+		return batchSize;
+	}
+
 	public MongoCollection<Document> getCollection() {
 		return collection;
 	}
 
+	/**
+	 * @return the collection, reading and writing documents as {@link JsonObject}s with the {@link JsonObjectCodec}
+	 */
+	public MongoCollection<JsonObject> getJsonCollection() {
+		return jsonCollection;
+	}
+
+	/**
+	 * @return projection which only includes the key field
+	 */
+	Bson keyProjection() {
+		return "_id".equals(this.keyField) ? Projections.include(this.keyField) : Projections.fields(Projections.include(this.keyField), Projections.excludeId());
+	}
+
+	/**
+	 * @return the key of the document, also if the key field is not a string (e.g. an {@code ObjectId} or a number)
+	 */
+	String getKey(Document document) {
+		Object key = document.get(this.keyField);
+		return key == null ? null : String.valueOf(key);
+	}
+
+	/**
+	 * @see #getKey(Document)
+	 */
+	String getKey(JsonObject json) {
+		JsonElement key = json.get(this.keyField);
+		if (key == null || key.isJsonNull()) {
+			return null;
+		}
+		if (key.isJsonObject() && key.getAsJsonObject().has("$oid")) {
+			return key.getAsJsonObject().get("$oid").getAsString();
+		}
+		return key.isJsonPrimitive() ? key.getAsString() : key.toString();
+	}
+
 	@Override
 	public void put(@Nonnull String key, @Nonnull JsonObject value) {
-		execute(() -> this.collection.updateOne(new Document(this.keyField, key).append(this.keyField, key), new Document("$set", DocumentParser.toDocument(value)), UPSERT_OPTIONS));
+		provide(putAsync(key, value), null);
 	}
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull DataCallable<JsonObject> valueCallable) {
-		execute(() -> this.collection.updateOne(new Document(this.keyField, key).append(this.keyField, key), new Document("$set", DocumentParser.toDocument(valueCallable.provide())), UPSERT_OPTIONS));
+		provide(putAsync(key, valueCallable), null);
 	}
 
 	/**
-	 * Note: Only runs {@code insert} instead of {@code update} with upsert.
+	 * Upserts all values with unordered {@code bulkWrite}s of {@link #getBatchSize()} documents, so a failing document does not stop the others
 	 *
-	 * @param map values to insert
+	 * @param map values to put
 	 */
 	@Override
 	public void putAll(@Nonnull Map<String, JsonObject> map) {
-		List<Document> documents = map.entrySet().stream().map(entry -> DocumentParser.toDocument(entry.getValue()).append(this.keyField, entry.getKey())).collect(Collectors.toList());
-		execute(() -> this.collection.insertMany(documents));
+		provide(putAllAsync(map), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull DataCallable<Map<String, JsonObject>> mapCallable) {
-		List<Document> documents = mapCallable.provide().entrySet().stream().map(entry -> DocumentParser.toDocument(entry.getValue()).append(this.keyField, entry.getKey())).collect(Collectors.toList());
-		execute(() -> this.collection.insertMany(documents));
+		provide(putAllAsync(mapCallable), null);
 	}
 
 	@Override
 	public void get(@Nonnull String key, @Nonnull DataCallback<JsonObject> callback) {
-		execute(() -> callback.provide(DocumentParser.toJson(this.collection.find(new Document(this.keyField, key)).limit(1).first())));
+		provide(getAsync(key), callback);
 	}
 
 	@Override
 	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
-		execute(() -> callback.provide(this.collection.count(new Document(this.keyField, key)) > 0));
+		provide(containsAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key, @Nonnull DataCallback<JsonObject> callback) {
-		execute(() -> callback.provide(DocumentParser.toJson(this.collection.findOneAndDelete(new Document(this.keyField, key)))));
+		provide(removeAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key) {
-		execute(() -> this.collection.deleteOne(new Document(this.keyField, key)));
+		execute(key, () -> this.collection.deleteOne(new Document(this.keyField, key)));
 	}
 
 	@Override
 	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
-		this.entries(stringJsonObjectMap -> {
-			assert stringJsonObjectMap != null;
-			callback.provide(stringJsonObjectMap.keySet());
-		});
+		provide(keysAsync(), callback);
 	}
 
 	@Override
 	public void entries(@Nonnull DataCallback<Map<String, JsonObject>> callback) {
-		execute(() -> {
+		provide(entriesAsync(), callback);
+	}
+
+	@Override
+	public void size(@Nonnull DataCallback<Integer> callback) {
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull JsonObject value) {
+		return write(key, () -> this.collection.updateOne(new Document(this.keyField, key).append(this.keyField, key), new Document("$set", value), UPSERT_OPTIONS));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<JsonObject> valueCallable) {
+		return write(key, () -> this.collection.updateOne(new Document(this.keyField, key).append(this.keyField, key), new Document("$set", valueCallable.provide()), UPSERT_OPTIONS));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, JsonObject> map) {
+		List<WriteModel<Document>> upserts = createUpserts(map);
+		return run(() -> upsertAll(upserts));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, JsonObject>> mapCallable) {
+		return run(() -> upsertAll(createUpserts(mapCallable.provide())));
+	}
+
+	List<WriteModel<Document>> createUpserts(Map<String, JsonObject> map) {
+		return map.entrySet().stream().map(entry -> new UpdateOneModel<Document>(new Document(this.keyField, entry.getKey()), new Document("$set", entry.getValue()), UPSERT_OPTIONS)).collect(Collectors.toList());
+	}
+
+	/**
+	 * Sends the upserts in chunks of {@link #getBatchSize()}, one round trip each. Every chunk is attempted, the first failure is thrown with the others suppressed.
+	 */
+	void upsertAll(List<WriteModel<Document>> upserts) {
+		int batchSize = getBatchSize();
+		RuntimeException failure = null;
+		for (int offset = 0; offset < upserts.size(); offset += batchSize) {
+			try {
+				this.collection.bulkWrite(upserts.subList(offset, Math.min(upserts.size(), offset + batchSize)), UNORDERED_OPTIONS);
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<JsonObject> getAsync(@Nonnull String key) {
+		return supply(key, () -> this.jsonCollection.find(new Document(this.keyField, key)).limit(1).first());
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, JsonObject>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		return supply(() -> {
 			Map<String, JsonObject> map = new HashMap<>();
-			for (Document doc : collection.find()) {
-				map.put(doc.getString(keyField), DocumentParser.toJson(doc));
+			for (JsonObject json : this.jsonCollection.find(Filters.in(this.keyField, keyList))) {
+				map.put(getKey(json), json);
 			}
-			callback.provide(map);
+			return map;
 		});
 	}
 
+	@Nonnull
 	@Override
-	public void size(@Nonnull DataCallback<Integer> callback) {
-		execute(() -> callback.provide((int) this.collection.count()));
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> this.collection.find(new Document(this.keyField, key)).projection(keyProjection()).limit(1).first() != null);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<JsonObject> removeAsync(@Nonnull String key) {
+		return supply(key, () -> this.jsonCollection.findOneAndDelete(new Document(this.keyField, key)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(() -> {
+			Set<String> keys = new HashSet<>();
+			for (Document doc : this.collection.find().projection(keyProjection())) {
+				keys.add(getKey(doc));
+			}
+			return keys;
+		});
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, JsonObject>> entriesAsync() {
+		return supply(() -> {
+			Map<String, JsonObject> map = new HashMap<>();
+			for (JsonObject json : this.jsonCollection.find()) {
+				map.put(getKey(json), json);
+			}
+			return map;
+		});
+	}
+
+	/**
+	 * Iterates the collection with a cursor on the calling thread, fetching {@code batchSize} documents per round trip
+	 */
+	@Nonnull
+	@Override
+	public Stream<String> streamKeys(int batchSize) {
+		MongoCursor<Document> cursor = this.collection.find().projection(keyProjection()).batchSize(batchSize).iterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false).onClose(cursor::close).map(this::getKey);
+	}
+
+	/**
+	 * Iterates the collection with a cursor on the calling thread, fetching {@code batchSize} documents per round trip
+	 */
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, JsonObject>> streamEntries(int batchSize) {
+		MongoCursor<JsonObject> cursor = this.jsonCollection.find().batchSize(batchSize).iterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false).onClose(cursor::close).map(json -> new AbstractMap.SimpleImmutableEntry<>(getKey(json), json));
+	}
+
+	/**
+	 * Uses the collection's metadata count, which may be off after an unclean shutdown or while writes are in flight on a sharded cluster
+	 */
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(() -> (int) this.collection.estimatedDocumentCount());
 	}
 }
@@ -1,23 +1,52 @@
 package org.inventivetalent.data.redis;
 
+import org.inventivetalent.data.BatchIterator;
 import org.inventivetalent.data.async.AbstractAsyncDataProvider;
 import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.async.DataCallback;
+import org.inventivetalent.data.async.StripedExecutor;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.Pool;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public class RedisDataProvider extends AbstractAsyncDataProvider<String> {
 
-	private final Jedis  jedis;
-	private final String keyFormat;
-	private final String keyPattern;
+	public static final int DEFAULT_SCAN_COUNT    = 1000;
+	public static final int DEFAULT_PIPELINE_SIZE = 1000;
+	public static final int DEFAULT_POOL_LANES    = 8;
+
+	private final Jedis       jedis;
+	private final Pool<Jedis> pool;
+	private final String      keyFormat;
+	private final String      keyPattern;
+	private       int         scanCount = DEFAULT_SCAN_COUNT;
+	private       String      indexKey;
+
+	private       boolean                      pipelined;
+	private       int                          pipelineSize      = DEFAULT_PIPELINE_SIZE;
+	private final Queue<PipelinedOperation<?>> pipelineQueue     = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean                pipelineScheduled = new AtomicBoolean();
+
+	private final Map<Script, String> scriptShas = new ConcurrentHashMap<>();
 
 	public RedisDataProvider(Jedis jedis) {
 		this.jedis = jedis;
+		this.pool = null;
 		this.keyFormat = "data-api:%s";
 		this.keyPattern = "data-api:(.)";
 	}
@@ -25,12 +54,14 @@ public class RedisDataProvider extends AbstractAsyncDataProvider<String> {
 	public RedisDataProvider(Executor executor, Jedis jedis) {
 		super(executor);
 		this.jedis = jedis;
+		this.pool = null;
 		this.keyFormat = "data-api:%s";
 		this.keyPattern = "data-api:(.)";
 	}
 
 	public RedisDataProvider(Jedis jedis, String keyFormat, String keyPattern) {
 		this.jedis = jedis;
+		this.pool = null;
 		this.keyFormat = keyFormat;
 		this.keyPattern = keyPattern;
 	}
@@ -38,10 +69,134 @@ public class RedisDataProvider extends AbstractAsyncDataProvider<String> {
 	public RedisDataProvider(Executor executor, Jedis jedis, String keyFormat, String keyPattern) {
 		super(executor);
 		this.jedis = jedis;
+		this.pool = null;
 		this.keyFormat = keyFormat;
 		this.keyPattern = keyPattern;
 	}
 
+	/**
+	 * Creates a provider which borrows a connection from the pool for each operation, running them on a {@link StripedExecutor} with {@link #DEFAULT_POOL_LANES} lanes
+	 */
+	public RedisDataProvider(Pool<Jedis> pool) {
+		this(new StripedExecutor(DEFAULT_POOL_LANES), pool);
+	}
+
+	/**
+	 * Creates a provider which borrows a connection from the pool for each operation, so it is safe to use with a multi-threaded executor
+	 */
+	public RedisDataProvider(Executor executor, Pool<Jedis> pool) {
+		this(executor, pool, "data-api:%s", "data-api:(.)");
+	}
+
+	public RedisDataProvider(Pool<Jedis> pool, String keyFormat, String keyPattern) {
+		this(new StripedExecutor(DEFAULT_POOL_LANES), pool, keyFormat, keyPattern);
+	}
+
+	public RedisDataProvider(Executor executor, Pool<Jedis> pool, String keyFormat, String keyPattern) {
+		super(executor);
+		this.jedis = null;
+		this.pool = pool;
+		this.keyFormat = keyFormat;
+		this.keyPattern = keyPattern;
+	}
+
+	/**
+	 * @param scanCount {@code COUNT} hint for the {@code SCAN} calls of {@link #keys(DataCallback)}, {@link #entries(DataCallback)} and {@link #size(DataCallback)}, also the size of the {@code MGET} chunks of {@link #entries(DataCallback)}
+	 */
+	public RedisDataProvider setScanCount(int scanCount) {
+		if (scanCount < 1) {
+			throw new IllegalArgumentException("scanCount must be at least 1");
+		}
+		this.scanCount = scanCount;
+		return this;
+	}
+
+	public int getScanCount() {
+		return scanCount;
+	}
+
+	/**
+	 * Keeps a set of all keys written through this provider under the given Redis key, so {@link #size(DataCallback)} is a single {@code SCARD} instead of a {@code SCAN} over the namespace.
+	 * The index key must not match the key format, and keys written by other clients are not counted; see {@link #rebuildIndex()}.
+	 *
+	 * @param indexKey Redis key of the index set, or <code>null</code> to disable the index
+	 */
+	public RedisDataProvider setIndexKey(@Nullable String indexKey) {
+		this.indexKey = indexKey;
+		return this;
+	}
+
+	@Nullable
+	public String getIndexKey() {
+		return indexKey;
+	}
+
+	/**
+	 * Replaces the index set with the keys currently in the namespace
+	 */
+	@Nonnull
+	public CompletionStage<Void> rebuildIndex() {
+		if (indexKey == null) {
+			throw new IllegalStateException("No index key set");
+		}
+		return run(() -> useJedis(jedis -> {
+			jedis.del(indexKey);
+			scanAll(jedis, this::scanKeys, rawKeys -> {
+				if (!rawKeys.isEmpty()) {
+					jedis.sadd(indexKey, rawKeys.toArray(new String[0]));
+				}
+			});
+		}));
+	}
+
+	/**
+	 * In pipelined mode, puts, gets, contains checks and removes are queued and sent to Redis in a single {@link Pipeline} per executor task,
+	 * completing their stages once the pipeline has been synced. Operations keep the order in which they were submitted.
+	 * Bulk puts and gets are split into {@code MSET}/{@code MGET} chunks of {@link #getPipelineSize()} entries which are sent in one pipeline.
+	 */
+	public RedisDataProvider setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+		return this;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * @param pipelineSize maximum number of operations sent per pipeline, also the chunk size of pipelined bulk operations
+	 */
+	public RedisDataProvider setPipelineSize(int pipelineSize) {
+		if (pipelineSize < 1) {
+			throw new IllegalArgumentException("pipelineSize must be at least 1");
+		}
+		this.pipelineSize = pipelineSize;
+		return this;
+	}
+
+	public int getPipelineSize() {
+		return pipelineSize;
+	}
+
+	/**
+	 * Runs the function with the provider's connection, or with one borrowed from the pool
+	 */
+	<T> T withJedis(Function<Jedis, T> function) {
+		if (pool == null) {
+			return function.apply(jedis);
+		}
+		try (Jedis jedis = pool.getResource()) {
+			return function.apply(jedis);
+		}
+	}
+
+	void useJedis(Consumer<Jedis> consumer) {
+		withJedis(jedis -> {
+			consumer.accept(jedis);
+			return null;
+		});
+	}
+
 	protected String formatKey(String key) {
 		return String.format(this.keyFormat, key);
 	}
@@ -52,27 +207,22 @@ public class RedisDataProvider extends AbstractAsyncDataProvider<String> {
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull String value) {
-		execute(() -> jedis.set(formatKey(key), value));
+		provide(putAsync(key, value), null);
 	}
 
 	@Override
 	public void put(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
-		execute(() -> jedis.set(formatKey(key), valueCallable.provide()));
+		provide(putAsync(key, valueCallable), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull Map<String, String> map) {
-		String[] keysValues = createKeysValues(map);
-		execute(() -> jedis.mset(keysValues));
+		provide(putAllAsync(map), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull DataCallable<Map<String, String>> mapCallable) {
-		execute(() -> {
-			Map<String, String> map = mapCallable.provide();
-			String[] keysValues = createKeysValues(map);
-			jedis.mset(keysValues);
-		});
+		provide(putAllAsync(mapCallable), null);
 	}
 
 	String[] createKeysValues(Map<String, String> map) {
@@ -87,58 +237,646 @@ public class RedisDataProvider extends AbstractAsyncDataProvider<String> {
 
 	@Override
 	public void get(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		execute(() -> callback.provide(jedis.get(formatKey(key))));
+		provide(getAsync(key), callback);
 	}
 
 	@Override
 	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
-		execute(() -> callback.provide(jedis.exists(formatKey(key))));
+		provide(containsAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		execute(() -> {
-			String formattedKey = formatKey(key);
-			String value = jedis.get(formattedKey);
-			jedis.del(formattedKey);
-			callback.provide(value);
-		});
+		provide(removeAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key) {
-		execute(() -> jedis.del(formatKey(key)));
+		if (pipelined) {
+			provide(pipeline(pipeline -> delete(pipeline, formatKey(key))), null);
+			return;
+		}
+		execute(key, () -> useJedis(jedis -> delete(jedis, formatKey(key))));
+	}
+
+	/**
+	 * Stores the value only if there is no entry for the key yet
+	 *
+	 * @param callback <code>true</code> if the value was stored
+	 */
+	public void putIfAbsent(@Nonnull String key, @Nonnull String value, @Nonnull DataCallback<Boolean> callback) {
+		provide(putIfAbsentAsync(key, value), callback);
+	}
+
+	/**
+	 * Stores the value and returns the previous one
+	 */
+	public void getAndSet(@Nonnull String key, @Nonnull String value, @Nonnull DataCallback<String> callback) {
+		provide(getAndSetAsync(key, value), callback);
+	}
+
+	/**
+	 * Removes the entry only if its current value equals the expected one
+	 *
+	 * @param callback <code>true</code> if the entry was removed
+	 */
+	public void remove(@Nonnull String key, @Nonnull String expectedValue, @Nonnull DataCallback<Boolean> callback) {
+		provide(removeAsync(key, expectedValue), callback);
 	}
 
 	@Override
 	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
-		execute(() -> {
-			Set<String> rawKeys = jedis.keys(formatKey("*"));
-			Set<String> keys = rawKeys.stream().map(this::extractKey).collect(Collectors.toSet());
-			callback.provide(keys);
-		});
+		provide(keysAsync(), callback);
 	}
 
 	@Override
 	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
-		execute(() -> {
-			//TODO: make this more efficient
-			Set<String> rawKeys = jedis.keys(formatKey("*"));
-			List<String> keys = rawKeys.stream().map(this::extractKey).collect(Collectors.toList());
-			List<String> values = jedis.mget(keys.toArray(new String[keys.size()]));
-			Map<String, String> map = new HashMap<>();
-			for (int i = 0; i < keys.size(); i++) {
-				map.put(keys.get(i), values.get(i));
-			}
-			callback.provide(map);
-		});
+		provide(entriesAsync(), callback);
 	}
 
 	@Override
 	public void size(@Nonnull DataCallback<Integer> callback) {
-		execute(() -> {
-			Set<String> rawKeys = jedis.keys(formatKey("*"));
-			callback.provide(rawKeys.size());
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+		if (pipelined) {
+			return pipeline(pipeline -> set(pipeline, formatKey(key), value));
+		}
+		return write(key, () -> useJedis(jedis -> set(jedis, formatKey(key), value)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		if (pipelined) {
+			return pipeline(pipeline -> set(pipeline, formatKey(key), valueCallable.provide()));
+		}
+		return write(key, () -> useJedis(jedis -> set(jedis, formatKey(key), valueCallable.provide())));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+		String[] keysValues = createKeysValues(map);
+		if (pipelined) {
+			return pipeline(pipeline -> setAll(pipeline, keysValues));
+		}
+		return run(() -> useJedis(jedis -> setAll(jedis, keysValues)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		if (pipelined) {
+			return pipeline(pipeline -> setAll(pipeline, createKeysValues(mapCallable.provide())));
+		}
+		return run(() -> {
+			Map<String, String> map = mapCallable.provide();
+			String[] keysValues = createKeysValues(map);
+			useJedis(jedis -> setAll(jedis, keysValues));
 		});
 	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> getAsync(@Nonnull String key) {
+		if (pipelined) {
+			return pipeline(pipeline -> get(pipeline, formatKey(key))::get);
+		}
+		return supply(key, () -> withJedis(jedis -> get(jedis, formatKey(key))));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		String[] rawKeys = keyList.stream().map(this::formatKey).toArray(String[]::new);
+		if (pipelined) {
+			return pipeline(pipeline -> {
+				List<Response<List<String>>> responses = new ArrayList<>();
+				for (int offset = 0; offset < rawKeys.length; offset += pipelineSize) {
+					responses.add(getAll(pipeline, Arrays.copyOfRange(rawKeys, offset, Math.min(rawKeys.length, offset + pipelineSize))));
+				}
+				return () -> {
+					List<String> values = new ArrayList<>(rawKeys.length);
+					for (Response<List<String>> response : responses) {
+						values.addAll(response.get());
+					}
+					return mapValues(keyList, values);
+				};
+			});
+		}
+		return supply(() -> {
+			if (rawKeys.length == 0) { return new HashMap<>(); }
+			return withJedis(jedis -> mapValues(keyList, getAll(jedis, rawKeys)));
+		});
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		if (pipelined) {
+			return pipeline(pipeline -> exists(pipeline, formatKey(key))::get);
+		}
+		return supply(key, () -> withJedis(jedis -> exists(jedis, formatKey(key))));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> removeAsync(@Nonnull String key) {
+		return eval(key, scripts().getAndRemove, result -> (String) result);
+	}
+
+	@Nonnull
+	public CompletionStage<Boolean> putIfAbsentAsync(@Nonnull String key, @Nonnull String value) {
+		return eval(key, scripts().putIfAbsent, result -> (Long) result == 1, value);
+	}
+
+	@Nonnull
+	public CompletionStage<String> getAndSetAsync(@Nonnull String key, @Nonnull String value) {
+		return eval(key, scripts().getAndSet, result -> (String) result, value);
+	}
+
+	@Nonnull
+	public CompletionStage<Boolean> removeAsync(@Nonnull String key, @Nonnull String expectedValue) {
+		return eval(key, scripts().removeIfEquals, result -> (Long) result == 1, expectedValue);
+	}
+
+	/**
+	 * Runs a compound operation as a single atomic script call, using {@code EVALSHA} with the script loaded once per provider
+	 *
+	 * @param key    key of the entry
+	 * @param script script of the operation
+	 * @param result function converting the script's reply
+	 * @param args   arguments passed after the key
+	 */
+	<T> CompletionStage<T> eval(String key, Script script, Function<Object, T> result, String... args) {
+		String rawKey = formatKey(key);
+		List<String> scriptKeys = scriptKeys(rawKey);
+		List<String> scriptArgs = scriptArgs(rawKey, args);
+		if (pipelined) {
+			return pipeline(jedis -> loadScript(jedis, script), pipeline -> {
+				Response<Object> response = pipeline.evalsha(scriptShas.get(script), scriptKeys, scriptArgs);
+				return () -> {
+					try {
+						return result.apply(response.get());
+					} catch (JedisNoScriptException e) {
+						// The script did not run, so run it again outside of the pipeline once it has been reloaded
+						scriptShas.remove(script);
+						return result.apply(withJedis(jedis -> eval(jedis, script, scriptKeys, scriptArgs)));
+					}
+				};
+			});
+		}
+		return supply(key, () -> withJedis(jedis -> result.apply(eval(jedis, script, scriptKeys, scriptArgs))));
+	}
+
+	Object eval(Jedis jedis, Script script, List<String> scriptKeys, List<String> scriptArgs) {
+		try {
+			return jedis.evalsha(loadScript(jedis, script), scriptKeys, scriptArgs);
+		} catch (JedisNoScriptException e) {
+			// The server's script cache was flushed or the server restarted
+			scriptShas.remove(script);
+			return jedis.evalsha(loadScript(jedis, script), scriptKeys, scriptArgs);
+		}
+	}
+
+	/**
+	 * @return SHA1 of the script, loading it with {@code SCRIPT LOAD} if this provider has not done so yet
+	 */
+	String loadScript(Jedis jedis, Script script) {
+		String sha = scriptShas.get(script);
+		if (sha == null) {
+			sha = jedis.scriptLoad(script.source);
+			scriptShas.put(script, sha);
+		}
+		return sha;
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(() -> withJedis(jedis -> {
+			Set<String> keys = new HashSet<>();
+			scanAll(jedis, this::scanKeys, rawKeys -> {
+				for (String rawKey : rawKeys) {
+					keys.add(extractKey(rawKey));
+				}
+			});
+			return keys;
+		}));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> entriesAsync() {
+		return supply(() -> withJedis(jedis -> {
+			Map<String, String> map = new HashMap<>();
+			scanAll(jedis, this::scanEntries, entries -> {
+				for (Map.Entry<String, String> entry : entries) {
+					map.put(extractKey(entry.getKey()), entry.getValue());
+				}
+			});
+			return map;
+		}));
+	}
+
+	@Nonnull
+	@Override
+	public Stream<String> streamKeys(int batchSize) {
+		return scan(batchSize, this::scanKeys).stream().map(this::extractKey);
+	}
+
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+		return scan(batchSize, this::scanEntries).stream().map(entry -> new AbstractMap.SimpleImmutableEntry<>(extractKey(entry.getKey()), entry.getValue()));
+	}
+
+	/**
+	 * Iterates the namespace, running one scan call per batch on the executor
+	 *
+	 * @param batchSize {@code COUNT} hint passed to the scan
+	 * @param scanner   scan call, run on the executor
+	 * @param <T>       element type
+	 * @return iterator over the scanned batches
+	 */
+	<T> BatchIterator<T> scan(int batchSize, Scanner<T> scanner) {
+		return new BatchIterator<T>() {
+			String cursor = ScanParams.SCAN_POINTER_START;
+
+			@Override
+			protected Collection<T> nextBatch() {
+				if (cursor == null) { return null; }
+				String current = cursor;
+				return supply(() -> withJedis(jedis -> {
+					ScanResult<T> result = scanner.scan(jedis, current, batchSize);
+					cursor = result.isCompleteIteration() ? null : result.getCursor();
+					return result.getResult();
+				})).join();
+			}
+		};
+	}
+
+	/**
+	 * Uses the index set if there is one, otherwise counts the keys with {@code SCAN}
+	 */
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(() -> withJedis(this::count));
+	}
+
+	/**
+	 * Iterates the whole namespace in steps of {@link #getScanCount()}, so the server is never blocked for longer than one batch
+	 *
+	 * @param consumer consumer for each batch
+	 */
+	<T> void scanAll(Jedis jedis, Scanner<T> scanner, Consumer<List<T>> consumer) {
+		String cursor = ScanParams.SCAN_POINTER_START;
+		ScanResult<T> result;
+		do {
+			result = scanner.scan(jedis, cursor, scanCount);
+			consumer.accept(result.getResult());
+			cursor = result.getCursor();
+		} while (!result.isCompleteIteration());
+	}
+
+	interface Scanner<T> {
+		ScanResult<T> scan(Jedis jedis, String cursor, int count);
+	}
+
+	Map<String, String> mapValues(List<String> keys, List<String> values) {
+		Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < keys.size(); i++) {
+			if (values.get(i) != null) {
+				map.put(keys.get(i), values.get(i));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Queues an operation for the next pipeline and schedules a drain on the executor if there is none pending
+	 *
+	 * @param operation function sending the commands, returning a supplier which reads the responses once the pipeline has been synced
+	 */
+	<T> CompletableFuture<T> pipeline(Function<Pipeline, Supplier<T>> operation) {
+		return pipeline(null, operation);
+	}
+
+	/**
+	 * @param prepare called with the pipeline's connection before the pipeline is opened, e.g. to load scripts
+	 */
+	<T> CompletableFuture<T> pipeline(@Nullable Consumer<Jedis> prepare, Function<Pipeline, Supplier<T>> operation) {
+		PipelinedOperation<T> pipelinedOperation = new PipelinedOperation<>(prepare, operation);
+		pipelineQueue.add(pipelinedOperation);
+		schedulePipeline();
+		return pipelinedOperation.future;
+	}
+
+	void schedulePipeline() {
+		if (!pipelineQueue.isEmpty() && pipelineScheduled.compareAndSet(false, true)) {
+			try {
+				execute(this::drainPipeline);
+			} catch (RejectedExecutionException e) {
+				pipelineScheduled.set(false);
+				PipelinedOperation<?> operation;
+				while ((operation = pipelineQueue.poll()) != null) {
+					operation.future.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	void drainPipeline() {
+		try {
+			while (!pipelineQueue.isEmpty()) {
+				List<PipelinedOperation<?>> batch = new ArrayList<>();
+				PipelinedOperation<?> operation;
+				while (batch.size() < pipelineSize && (operation = pipelineQueue.poll()) != null) {
+					batch.add(operation);
+				}
+				try {
+					useJedis(jedis -> {
+						for (PipelinedOperation<?> pipelinedOperation : batch) {
+							pipelinedOperation.prepare(jedis);
+						}
+						Pipeline pipeline = jedis.pipelined();
+						for (PipelinedOperation<?> pipelinedOperation : batch) {
+							pipelinedOperation.send(pipeline);
+						}
+						pipeline.sync();
+					});
+				} catch (RuntimeException e) {
+					for (PipelinedOperation<?> pipelinedOperation : batch) {
+						pipelinedOperation.future.completeExceptionally(e);
+					}
+					continue;
+				}
+				for (PipelinedOperation<?> pipelinedOperation : batch) {
+					pipelinedOperation.complete();
+				}
+			}
+		} finally {
+			pipelineScheduled.set(false);
+			// Operations queued after the last check would otherwise wait for the next one
+			schedulePipeline();
+		}
+	}
+
+	static class PipelinedOperation<T> {
+
+		final Consumer<Jedis>                 prepare;
+		final Function<Pipeline, Supplier<T>> operation;
+		final CompletableFuture<T>            future = new CompletableFuture<>();
+		Supplier<T> result;
+
+		PipelinedOperation(Consumer<Jedis> prepare, Function<Pipeline, Supplier<T>> operation) {
+			this.prepare = prepare;
+			this.operation = operation;
+		}
+
+		void prepare(Jedis jedis) {
+			if (prepare == null) { return; }
+			try {
+				prepare.accept(jedis);
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		void send(Pipeline pipeline) {
+			if (future.isDone()) { return; }
+			try {
+				result = operation.apply(pipeline);
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		void complete() {
+			if (result == null) { return; }
+			try {
+				future.complete(result.get());
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * @return supplier which checks the response for errors
+	 */
+	static Supplier<Void> done(Response<?> response) {
+		return () -> {
+			response.get();
+			return null;
+		};
+	}
+
+	static class Script {
+
+		final String source;
+
+		Script(String... lines) {
+			this.source = String.join("\n", lines);
+		}
+	}
+
+	/**
+	 * Scripts of the compound operations for one storage layout, called with the keys and arguments of {@link #scriptKeys(String)} and {@link #scriptArgs(String, String...)}
+	 */
+	static class Scripts {
+
+		final Script getAndRemove;
+		final Script putIfAbsent;
+		final Script getAndSet;
+		final Script removeIfEquals;
+
+		Scripts(Script getAndRemove, Script putIfAbsent, Script getAndSet, Script removeIfEquals) {
+			this.getAndRemove = getAndRemove;
+			this.putIfAbsent = putIfAbsent;
+			this.getAndSet = getAndSet;
+			this.removeIfEquals = removeIfEquals;
+		}
+	}
+
+	// KEYS[1] is the entry's key, KEYS[2] the optional index set
+	static final Scripts KEY_SCRIPTS = new Scripts(
+			new Script("-- data-api:get-and-remove",
+					"local value = redis.call('GET', KEYS[1])",
+					"if value then",
+					"  redis.call('DEL', KEYS[1])",
+					"  if KEYS[2] then redis.call('SREM', KEYS[2], KEYS[1]) end",
+					"end",
+					"return value"),
+			new Script("-- data-api:put-if-absent",
+					"if redis.call('SETNX', KEYS[1], ARGV[1]) == 0 then return 0 end",
+					"if KEYS[2] then redis.call('SADD', KEYS[2], KEYS[1]) end",
+					"return 1"),
+			new Script("-- data-api:get-and-set",
+					"local value = redis.call('GET', KEYS[1])",
+					"redis.call('SET', KEYS[1], ARGV[1])",
+					"if KEYS[2] then redis.call('SADD', KEYS[2], KEYS[1]) end",
+					"return value"),
+			new Script("-- data-api:remove-if-equals",
+					"if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end",
+					"redis.call('DEL', KEYS[1])",
+					"if KEYS[2] then redis.call('SREM', KEYS[2], KEYS[1]) end",
+					"return 1"));
+
+	Scripts scripts() {
+		return KEY_SCRIPTS;
+	}
+
+	List<String> scriptKeys(String rawKey) {
+		return indexKey == null ? Collections.singletonList(rawKey) : Arrays.asList(rawKey, indexKey);
+	}
+
+	List<String> scriptArgs(String rawKey, String... args) {
+		return Arrays.asList(args);
+	}
+
+	// Storage commands, the only methods which depend on how entries are laid out in Redis
+
+	String get(Jedis jedis, String rawKey) {
+		return jedis.get(rawKey);
+	}
+
+	List<String> getAll(Jedis jedis, String[] rawKeys) {
+		return jedis.mget(rawKeys);
+	}
+
+	boolean exists(Jedis jedis, String rawKey) {
+		return jedis.exists(rawKey);
+	}
+
+	void set(Jedis jedis, String rawKey, String value) {
+		if (indexKey == null) {
+			jedis.set(rawKey, value);
+			return;
+		}
+		Transaction transaction = jedis.multi();
+		transaction.set(rawKey, value);
+		transaction.sadd(indexKey, rawKey);
+		transaction.exec();
+	}
+
+	void setAll(Jedis jedis, String[] keysValues) {
+		if (keysValues.length == 0) { return; }
+		if (indexKey == null) {
+			jedis.mset(keysValues);
+			return;
+		}
+		String[] rawKeys = new String[keysValues.length / 2];
+		for (int i = 0; i < rawKeys.length; i++) {
+			rawKeys[i] = keysValues[i * 2];
+		}
+		Transaction transaction = jedis.multi();
+		transaction.mset(keysValues);
+		transaction.sadd(indexKey, rawKeys);
+		transaction.exec();
+	}
+
+	void delete(Jedis jedis, String rawKey) {
+		if (indexKey == null) {
+			jedis.del(rawKey);
+			return;
+		}
+		Transaction transaction = jedis.multi();
+		transaction.del(rawKey);
+		transaction.srem(indexKey, rawKey);
+		transaction.exec();
+	}
+
+	int count(Jedis jedis) {
+		if (indexKey != null) {
+			return jedis.scard(indexKey).intValue();
+		}
+		// SCAN may return a key more than once
+		Set<String> rawKeys = new HashSet<>();
+		scanAll(jedis, this::scanKeys, rawKeys::addAll);
+		return rawKeys.size();
+	}
+
+	ScanResult<String> scanKeys(Jedis jedis, String cursor, int count) {
+		return jedis.scan(cursor, new ScanParams().match(formatKey("*")).count(count));
+	}
+
+	/**
+	 * Scans a batch of keys and fetches their values with one {@code MGET}. Keys removed in between are skipped.
+	 */
+	ScanResult<Map.Entry<String, String>> scanEntries(Jedis jedis, String cursor, int count) {
+		ScanResult<String> result = scanKeys(jedis, cursor, count);
+		List<String> rawKeys = result.getResult();
+		List<Map.Entry<String, String>> entries = new ArrayList<>();
+		if (!rawKeys.isEmpty()) {
+			List<String> values = jedis.mget(rawKeys.toArray(new String[0]));
+			for (int i = 0; i < rawKeys.size(); i++) {
+				if (values.get(i) != null) {
+					entries.add(new AbstractMap.SimpleImmutableEntry<>(rawKeys.get(i), values.get(i)));
+				}
+			}
+		}
+		return new ScanResult<>(result.getCursor(), entries);
+	}
+
+	Response<String> get(Pipeline pipeline, String rawKey) {
+		return pipeline.get(rawKey);
+	}
+
+	Response<List<String>> getAll(Pipeline pipeline, String[] rawKeys) {
+		return pipeline.mget(rawKeys);
+	}
+
+	Response<Boolean> exists(Pipeline pipeline, String rawKey) {
+		return pipeline.exists(rawKey);
+	}
+
+	Supplier<Void> set(Pipeline pipeline, String rawKey, String value) {
+		if (indexKey == null) {
+			return done(pipeline.set(rawKey, value));
+		}
+		pipeline.multi();
+		pipeline.set(rawKey, value);
+		pipeline.sadd(indexKey, rawKey);
+		return done(pipeline.exec());
+	}
+
+	Supplier<Void> setAll(Pipeline pipeline, String[] keysValues) {
+		List<Response<?>> responses = new ArrayList<>();
+		for (int offset = 0; offset < keysValues.length; offset += pipelineSize * 2) {
+			String[] chunk = Arrays.copyOfRange(keysValues, offset, Math.min(keysValues.length, offset + pipelineSize * 2));
+			if (indexKey == null) {
+				responses.add(pipeline.mset(chunk));
+				continue;
+			}
+			String[] rawKeys = new String[chunk.length / 2];
+			for (int i = 0; i < rawKeys.length; i++) {
+				rawKeys[i] = chunk[i * 2];
+			}
+			pipeline.multi();
+			pipeline.mset(chunk);
+			pipeline.sadd(indexKey, rawKeys);
+			responses.add(pipeline.exec());
+		}
+		return () -> {
+			responses.forEach(Response::get);
+			return null;
+		};
+	}
+
+	Supplier<Void> delete(Pipeline pipeline, String rawKey) {
+		if (indexKey == null) {
+			return done(pipeline.del(rawKey));
+		}
+		pipeline.multi();
+		pipeline.del(rawKey);
+		pipeline.srem(indexKey, rawKey);
+		return done(pipeline.exec());
+	}
 }
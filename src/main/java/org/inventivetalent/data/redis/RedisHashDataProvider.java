@@ -0,0 +1,207 @@
+package org.inventivetalent.data.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.util.Pool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the whole namespace in a single Redis hash, with one field per key.
+ * Size is a single {@code HLEN}, and iteration uses {@code HSCAN} over the hash instead of {@code SCAN} over the keyspace.
+ */
+public class RedisHashDataProvider extends RedisDataProvider {
+
+	private final String hashKey;
+
+	public RedisHashDataProvider(Jedis jedis, String hashKey) {
+		super(jedis);
+		this.hashKey = hashKey;
+	}
+
+	public RedisHashDataProvider(Executor executor, Jedis jedis, String hashKey) {
+		super(executor, jedis);
+		this.hashKey = hashKey;
+	}
+
+	public RedisHashDataProvider(Pool<Jedis> pool, String hashKey) {
+		super(pool);
+		this.hashKey = hashKey;
+	}
+
+	public RedisHashDataProvider(Executor executor, Pool<Jedis> pool, String hashKey) {
+		super(executor, pool);
+		this.hashKey = hashKey;
+	}
+
+	public String getHashKey() {
+		return hashKey;
+	}
+
+	/**
+	 * Does nothing, the hash layout needs no index since {@code HLEN} already counts the hash in constant time.
+	 * {@link #getIndexKey()} stays <code>null</code>.
+	 */
+	@Override
+	public RedisDataProvider setIndexKey(@Nullable String indexKey) {
+		return this;
+	}
+
+	/**
+	 * Does nothing, the hash layout has no index
+	 *
+	 * @return a completed stage
+	 */
+	@Nonnull
+	@Override
+	public CompletionStage<Void> rebuildIndex() {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	protected String formatKey(String key) {
+		return key;
+	}
+
+	@Override
+	protected String extractKey(String key) {
+		return key;
+	}
+
+	// KEYS[1] is the hash, ARGV[1] the entry's field
+	static final Scripts HASH_SCRIPTS = new Scripts(
+			new Script("-- data-api:hash-get-and-remove",
+					"local value = redis.call('HGET', KEYS[1], ARGV[1])",
+					"if value then redis.call('HDEL', KEYS[1], ARGV[1]) end",
+					"return value"),
+			new Script("-- data-api:hash-put-if-absent",
+					"return redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2])"),
+			new Script("-- data-api:hash-get-and-set",
+					"local value = redis.call('HGET', KEYS[1], ARGV[1])",
+					"redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])",
+					"return value"),
+			new Script("-- data-api:hash-remove-if-equals",
+					"if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end",
+					"redis.call('HDEL', KEYS[1], ARGV[1])",
+					"return 1"));
+
+	@Override
+	Scripts scripts() {
+		return HASH_SCRIPTS;
+	}
+
+	@Override
+	List<String> scriptKeys(String field) {
+		return Collections.singletonList(hashKey);
+	}
+
+	@Override
+	List<String> scriptArgs(String field, String... args) {
+		List<String> scriptArgs = new ArrayList<>(args.length + 1);
+		scriptArgs.add(field);
+		scriptArgs.addAll(Arrays.asList(args));
+		return scriptArgs;
+	}
+
+	@Override
+	String get(Jedis jedis, String field) {
+		return jedis.hget(hashKey, field);
+	}
+
+	@Override
+	List<String> getAll(Jedis jedis, String[] fields) {
+		return jedis.hmget(hashKey, fields);
+	}
+
+	@Override
+	boolean exists(Jedis jedis, String field) {
+		return jedis.hexists(hashKey, field);
+	}
+
+	@Override
+	void set(Jedis jedis, String field, String value) {
+		jedis.hset(hashKey, field, value);
+	}
+
+	@Override
+	void setAll(Jedis jedis, String[] fieldsValues) {
+		if (fieldsValues.length == 0) { return; }
+		jedis.hset(hashKey, toMap(fieldsValues, 0, fieldsValues.length));
+	}
+
+	@Override
+	void delete(Jedis jedis, String field) {
+		jedis.hdel(hashKey, field);
+	}
+
+	@Override
+	int count(Jedis jedis) {
+		return jedis.hlen(hashKey).intValue();
+	}
+
+	@Override
+	ScanResult<String> scanKeys(Jedis jedis, String cursor, int count) {
+		ScanResult<Map.Entry<String, String>> result = scanEntries(jedis, cursor, count);
+		return new ScanResult<>(result.getCursor(), result.getResult().stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+	}
+
+	@Override
+	ScanResult<Map.Entry<String, String>> scanEntries(Jedis jedis, String cursor, int count) {
+		return jedis.hscan(hashKey, cursor, new ScanParams().count(count));
+	}
+
+	@Override
+	Response<String> get(Pipeline pipeline, String field) {
+		return pipeline.hget(hashKey, field);
+	}
+
+	@Override
+	Response<List<String>> getAll(Pipeline pipeline, String[] fields) {
+		return pipeline.hmget(hashKey, fields);
+	}
+
+	@Override
+	Response<Boolean> exists(Pipeline pipeline, String field) {
+		return pipeline.hexists(hashKey, field);
+	}
+
+	@Override
+	Supplier<Void> set(Pipeline pipeline, String field, String value) {
+		return done(pipeline.hset(hashKey, field, value));
+	}
+
+	@Override
+	Supplier<Void> setAll(Pipeline pipeline, String[] fieldsValues) {
+		List<Response<?>> responses = new ArrayList<>();
+		for (int offset = 0; offset < fieldsValues.length; offset += getPipelineSize() * 2) {
+			responses.add(pipeline.hset(hashKey, toMap(fieldsValues, offset, Math.min(fieldsValues.length, offset + getPipelineSize() * 2))));
+		}
+		return () -> {
+			responses.forEach(Response::get);
+			return null;
+		};
+	}
+
+	@Override
+	Supplier<Void> delete(Pipeline pipeline, String field) {
+		return done(pipeline.hdel(hashKey, field));
+	}
+
+	static Map<String, String> toMap(String[] fieldsValues, int from, int to) {
+		Map<String, String> map = new HashMap<>();
+		for (int i = from; i < to; i += 2) {
+			map.put(fieldsValues[i], fieldsValues[i + 1]);
+		}
+		return map;
+	}
+}
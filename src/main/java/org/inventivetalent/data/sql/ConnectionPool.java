@@ -0,0 +1,194 @@
+package org.inventivetalent.data.sql;
+
+import javax.annotation.Nonnull;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small bounded pool of connections for one table, each with its own {@link StatementCache}.
+ * <p>
+ * At most <code>maxSize</code> connections are borrowed at once, further borrowers wait for one to be released.
+ * Connections which have been idle for a while are validated before they are handed out again,
+ * and connections idle for longer than the idle timeout are closed the next time the pool is used.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	public static final int  DEFAULT_MAX_SIZE     = 8;
+	public static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+	static final long VALIDATION_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+	static final int  VALIDATION_TIMEOUT  = 5;
+
+	private final DataSource            dataSource;
+	private final String                table;
+	private final int                   maxSize;
+	private final long                  idleTimeout;
+	private final Semaphore             permits;
+	private final Deque<IdleConnection> idle = new ArrayDeque<>();
+	private volatile boolean closed;
+
+	public ConnectionPool(@Nonnull DataSource dataSource, @Nonnull String table) {
+		this(dataSource, table, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param dataSource  source of new connections
+	 * @param table       table to prepare statements for
+	 * @param maxSize     maximum number of open connections
+	 * @param idleTimeout time after which an unused connection is closed
+	 * @param unit        unit of the timeout
+	 */
+	public ConnectionPool(@Nonnull DataSource dataSource, @Nonnull String table, int maxSize, long idleTimeout, @Nonnull TimeUnit unit) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.dataSource = dataSource;
+		this.table = table;
+		this.maxSize = maxSize;
+		this.idleTimeout = unit.toNanos(idleTimeout);
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Creates a pool around a single existing connection, which is neither validated nor closed by the pool
+	 */
+	public ConnectionPool(@Nonnull Connection connection, @Nonnull String table) {
+		this.dataSource = null;
+		this.table = table;
+		this.maxSize = 1;
+		this.idleTimeout = Long.MAX_VALUE;
+		this.permits = new Semaphore(1, true);
+		this.idle.push(new IdleConnection(new StatementCache(connection, table)));
+	}
+
+	/**
+	 * Borrows a connection, waiting for one to be released if all are in use.
+	 * The connection has to be given back with {@link #release(StatementCache)}.
+	 */
+	@Nonnull
+	public StatementCache borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool has been closed");
+		}
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		try {
+			while (true) {
+				IdleConnection connection;
+				synchronized (idle) {
+					connection = idle.pollFirst();
+				}
+				if (connection == null) {
+					return new StatementCache(dataSource.getConnection(), table);
+				}
+				if (isOwned() && System.nanoTime() - connection.since > VALIDATION_INTERVAL && !connection.statements.getConnection().isValid(VALIDATION_TIMEOUT)) {
+					discard(connection.statements);
+					continue;
+				}
+				return connection.statements;
+			}
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool
+	 */
+	public void release(@Nonnull StatementCache statements) {
+		List<StatementCache> expired = new ArrayList<>();
+		try {
+			if (closed || (isOwned() && isClosed(statements))) {
+				expired.add(statements);
+				return;
+			}
+			long now = System.nanoTime();
+			synchronized (idle) {
+				idle.addFirst(new IdleConnection(statements));
+				// The least recently used connections are at the end
+				while (now - idle.peekLast().since > idleTimeout) {
+					expired.add(idle.pollLast().statements);
+				}
+			}
+		} finally {
+			permits.release();
+			expired.forEach(this::discard);
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Borrowed connections are closed once they are released.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		List<IdleConnection> connections;
+		synchronized (idle) {
+			connections = new ArrayList<>(idle);
+			idle.clear();
+		}
+		for (IdleConnection connection : connections) {
+			discard(connection.statements);
+		}
+	}
+
+	@Nonnull
+	public String getTable() {
+		return table;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	boolean isOwned() {
+		return dataSource != null;
+	}
+
+	boolean isClosed(StatementCache statements) {
+		try {
+			return statements.getConnection().isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+
+	void discard(StatementCache statements) {
+		statements.close();
+		if (isOwned()) {
+			try {
+				statements.getConnection().close();
+			} catch (SQLException ignored) {
+			}
+		}
+	}
+
+	static class IdleConnection {
+
+		final StatementCache statements;
+		final long           since = System.nanoTime();
+
+		IdleConnection(StatementCache statements) {
+			this.statements = statements;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.inventivetalent.data.sql;
+
+import javax.annotation.Nonnull;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of a single connection, keyed by their query template.
+ * Each template is formatted with the table name and prepared once, then reused until the cache is closed.
+ * <p>
+ * A cached statement must not be used by two threads at the same time, and its results have to be read before it is used again.
+ */
+public class StatementCache implements AutoCloseable {
+
+	private final Connection                     connection;
+	private final String                         table;
+	private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+	public StatementCache(@Nonnull Connection connection, @Nonnull String table) {
+		this.connection = connection;
+		this.table = table;
+	}
+
+	/**
+	 * @param query query template, with <code>%1$s</code> in place of the table name
+	 * @return the prepared statement for the template
+	 */
+	@Nonnull
+	public synchronized PreparedStatement get(@Nonnull String query) throws SQLException {
+		PreparedStatement stmt = statements.get(query);
+		if (stmt == null || stmt.isClosed()) {
+			stmt = connection.prepareStatement(String.format(query, table));
+			statements.put(query, stmt);
+		}
+		return stmt;
+	}
+
+	@Nonnull
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Closes all cached statements, but not the connection
+	 */
+	@Override
+	public synchronized void close() {
+		for (PreparedStatement stmt : statements.values()) {
+			try {
+				stmt.close();
+			} catch (SQLException ignored) {
+			}
+		}
+		statements.clear();
+	}
+
+}
@@ -1,13 +1,18 @@
 package org.inventivetalent.data.sqlite;
 
+import org.inventivetalent.data.BatchIterator;
 import org.inventivetalent.data.async.AbstractAsyncDataProvider;
 import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.async.DataCallback;
+import org.inventivetalent.data.sql.ConnectionPool;
+import org.inventivetalent.data.sql.StatementCache;
 
 import javax.annotation.Nonnull;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 public class SQLiteDataProvider extends AbstractAsyncDataProvider<String> {
 
@@ -17,223 +22,400 @@ public class SQLiteDataProvider extends AbstractAsyncDataProvider<String> {
 			+ "`_Value` TEXT"//
 			+ ");";//
 	static final String SELECT_VALUE_WHERE_KEY     = "SELECT * FROM %1$s WHERE _Key=? LIMIT 1;";
-	static final String SELECT_VALUES_IN           = "SELECT _Key, _Value FROM %1s WHERE _Key in (?);";
+	static final String SELECT_VALUES_IN           = "SELECT _Key, _Value FROM %1$s WHERE _Key IN (%2$s);";
 	static final String INSERT_OR_REPLACE          = "INSERT OR REPLACE INTO %1$s (_Key,_Value) VALUES (?,?)";
-	static final String INSERT_MULTIPLE_OR_REPLACE = "INSERT OR REPLACE INTO %1$s (_Key,_Value) VALUES%2$s";
 	static final String DELETE_WHERE_KEY           = "DELETE FROM %1$s WHERE _Key=?;";
 	static final String COUNT_WHERE_KEY            = "SELECT count(*) FROM %1$s WHERE _Key=?;";
 	static final String SELECT_KEYS                = "SELECT _Key FROM %1$s;";
 	static final String SELECT_ENTRIES             = "SELECT _Key, _Value FROM %1$s;";
 	static final String COUNT                      = "SELECT COUNT(*) AS count FROM %1$s;";
+	static final String SELECT_KEYS_FIRST          = "SELECT _Key FROM %1$s ORDER BY _Key LIMIT ?;";
+	static final String SELECT_KEYS_AFTER          = "SELECT _Key FROM %1$s WHERE _Key > ? ORDER BY _Key LIMIT ?;";
+	static final String SELECT_ENTRIES_FIRST       = "SELECT _Key, _Value FROM %1$s ORDER BY _Key LIMIT ?;";
+	static final String SELECT_ENTRIES_AFTER       = "SELECT _Key, _Value FROM %1$s WHERE _Key > ? ORDER BY _Key LIMIT ?;";
 
-	private final Connection connection;
-	private final String     table;
+	static final int SELECT_IN_CHUNK_SIZE = 500;
+	static final int DEFAULT_BATCH_SIZE   = 1000;
 
-	public SQLiteDataProvider(Connection connection, String table) {
-		this.connection = connection;
-		this.table = table;
+	private final ConnectionPool pool;
+	private final String         table;
+	private       int            batchSize = DEFAULT_BATCH_SIZE;
 
-		createTableIfNotExists();
+	public SQLiteDataProvider(Connection connection, String table) {
+		this(new ConnectionPool(connection, table));
 	}
 
 	public SQLiteDataProvider(Executor executor, Connection connection, String table) {
-		super(executor);
-		this.connection = connection;
-		this.table = table;
-
-		createTableIfNotExists();
+		this(executor, new ConnectionPool(connection, table));
 	}
 
 	public SQLiteDataProvider(String host, String user, String pass, String table) throws SQLException {
-		this.connection = DriverManager.getConnection(host, user, pass);
-		this.table = table;
+		this(new ConnectionPool(DriverManager.getConnection(host, user, pass), table));
+	}
+
+	public SQLiteDataProvider(Executor executor, String host, String user, String pass, String table) throws SQLException {
+		this(executor, new ConnectionPool(DriverManager.getConnection(host, user, pass), table));
+	}
+
+	public SQLiteDataProvider(ConnectionPool pool) {
+		this.pool = pool;
+		this.table = pool.getTable();
 
 		createTableIfNotExists();
 	}
 
-	public SQLiteDataProvider(Executor executor, String host, String user, String pass, String table) throws SQLException {
+	public SQLiteDataProvider(Executor executor, ConnectionPool pool) {
 		super(executor);
-		this.connection = DriverManager.getConnection(host, user, pass);
-		this.table = table;
+		this.pool = pool;
+		this.table = pool.getTable();
 
 		createTableIfNotExists();
 	}
 
+	/**
+	 * @param batchSize number of rows sent per batch in {@link #putAll(Map)}
+	 */
+	public SQLiteDataProvider setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Closes the pool on the executor. Connections passed to the constructor are left open.
+	 */
+	public CompletionStage<Void> close() {
+		return run(pool::close);
+	}
+
+	/**
+	 * Creates the table before returning, since a multi-threaded executor could otherwise run other statements first
+	 */
 	void createTableIfNotExists() {
-		execute(() -> {
-			try {
-				connection.prepareStatement(String.format(CREATE_TABLE_IF_NOT_EXISTS, table)).executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
+		useConnection(statements -> {
+			try (PreparedStatement stmt = statements.getConnection().prepareStatement(String.format(CREATE_TABLE_IF_NOT_EXISTS, table))) {
+				stmt.executeUpdate();
 			}
 		});
 	}
 
-	@Override
-	public void put(@Nonnull String key, @Nonnull String value) {
-		execute(() -> {
+	/**
+	 * Runs the function with a connection borrowed from the pool
+	 */
+	<T> T withConnection(ConnectionFunction<T> function) {
+		try {
+			StatementCache statements = pool.borrow();
 			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(INSERT_OR_REPLACE, table));
-				stmt.setString(1, key);
-				stmt.setString(2, value);
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
+				return function.apply(statements);
+			} finally {
+				pool.release(statements);
 			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	void useConnection(ConnectionConsumer consumer) {
+		withConnection(statements -> {
+			consumer.accept(statements);
+			return null;
 		});
 	}
 
+	interface ConnectionFunction<T> {
+		T apply(StatementCache statements) throws SQLException;
+	}
+
+	interface ConnectionConsumer {
+		void accept(StatementCache statements) throws SQLException;
+	}
+
+	@Override
+	public void put(@Nonnull String key, @Nonnull String value) {
+		provide(putAsync(key, value), null);
+	}
+
 	@Override
 	public void put(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
-		execute(() -> {
-			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(INSERT_OR_REPLACE, table));
-				stmt.setString(1, key);
-				stmt.setString(2, valueCallable.provide());
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		provide(putAsync(key, valueCallable), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull Map<String, String> map) {
-		execute(() -> {
-			String arrayString = "";
-			boolean first = true;
-			for (Map.Entry<String, String> entry : map.entrySet()) {
-				if (!first) {
-					arrayString += ", ";
-				}
-				arrayString += "(`" + entry.getKey() + "`, `" + entry.getValue() + "`)";
-
-				first = false;
-			}
-			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(INSERT_MULTIPLE_OR_REPLACE, table, arrayString));
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		provide(putAllAsync(map), null);
 	}
 
 	@Override
 	public void putAll(@Nonnull DataCallable<Map<String, String>> mapCallable) {
-		execute(() -> {
-			Map<String, String> map = mapCallable.provide();
-			String arrayString = "";
-			boolean first = true;
-			for (Map.Entry<String, String> entry : map.entrySet()) {
-				if (!first) {
-					arrayString += ", ";
-				}
-				arrayString += "(`" + entry.getKey() + "`, `" + entry.getValue() + "`)";
-
-				first = false;
-			}
-			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(INSERT_MULTIPLE_OR_REPLACE, table, arrayString));
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		provide(putAllAsync(mapCallable), null);
 	}
 
 	@Override
 	public void get(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		execute(() -> {
-			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(SELECT_VALUE_WHERE_KEY, table));
-				stmt.setString(1, key);
-				ResultSet resultSet = stmt.executeQuery();
-				if (resultSet.next()) {
-					callback.provide(resultSet.getString("_Value"));
-				}
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		provide(getAsync(key), callback);
 	}
 
 	@Override
 	public void contains(@Nonnull String key, @Nonnull DataCallback<Boolean> callback) {
-		execute(() -> {
-			try {
-				PreparedStatement preparedStatement = connection.prepareStatement(String.format(COUNT_WHERE_KEY, table));
-				preparedStatement.setString(1, key);
-				callback.provide(preparedStatement.executeQuery().next());
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		provide(containsAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key, @Nonnull DataCallback<String> callback) {
-		get(key, callback);
-		remove(key);
+		provide(removeAsync(key), callback);
 	}
 
 	@Override
 	public void remove(@Nonnull String key) {
-		execute(() -> {
-			try {
-				PreparedStatement preparedStatement = connection.prepareStatement(String.format(DELETE_WHERE_KEY, table));
-				preparedStatement.setString(1, key);
-				preparedStatement.executeUpdate();
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
-			}
-		});
+		execute(key, () -> useConnection(statements -> delete(statements, key)));
 	}
 
 	@Override
 	public void keys(@Nonnull DataCallback<Collection<String>> callback) {
-		execute(() -> {
-			try {
-				Set<String> keys = new HashSet<>();
-				ResultSet resultSet = connection.prepareStatement(String.format(SELECT_KEYS, table)).executeQuery();
+		provide(keysAsync(), callback);
+	}
+
+	@Override
+	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
+		provide(entriesAsync(), callback);
+	}
+
+	@Override
+	public void size(@Nonnull DataCallback<Integer> callback) {
+		provide(sizeAsync(), callback);
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull String value) {
+		return write(key, () -> useConnection(statements -> insert(statements, key, value)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAsync(@Nonnull String key, @Nonnull DataCallable<String> valueCallable) {
+		return write(key, () -> useConnection(statements -> insert(statements, key, valueCallable.provide())));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull Map<String, String> map) {
+		Map<String, String> copy = new HashMap<>(map);
+		return run(() -> useConnection(statements -> insertAll(statements, copy)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Void> putAllAsync(@Nonnull DataCallable<Map<String, String>> mapCallable) {
+		return run(() -> useConnection(statements -> insertAll(statements, mapCallable.provide())));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> getAsync(@Nonnull String key) {
+		return supply(key, () -> withConnection(statements -> select(statements, key)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Map<String, String>> getAllAsync(@Nonnull Collection<String> keys) {
+		List<String> keyList = new ArrayList<>(keys);
+		return supply(() -> withConnection(statements -> selectAll(statements, keyList)));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Boolean> containsAsync(@Nonnull String key) {
+		return supply(key, () -> withConnection(statements -> {
+			PreparedStatement stmt = statements.get(COUNT_WHERE_KEY);
+			stmt.setString(1, key);
+			try (ResultSet resultSet = stmt.executeQuery()) {
+				return resultSet.next() && resultSet.getInt(1) > 0;
+			}
+		}));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<String> removeAsync(@Nonnull String key) {
+		return supply(key, () -> withConnection(statements -> {
+			String value = select(statements, key);
+			delete(statements, key);
+			return value;
+		}));
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Collection<String>> keysAsync() {
+		return supply(() -> withConnection(statements -> {
+			Set<String> keys = new HashSet<>();
+			try (ResultSet resultSet = statements.get(SELECT_KEYS).executeQuery()) {
 				while (resultSet.next()) {
 					keys.add(resultSet.getString("_Key"));
 				}
-				callback.provide(keys);
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
 			}
-		});
+			return keys;
+		}));
 	}
 
+	@Nonnull
 	@Override
-	public void entries(@Nonnull DataCallback<Map<String, String>> callback) {
-		execute(() -> {
-			try {
-				Map<String, String> entries = new HashMap<>();
-				ResultSet resultSet = connection.prepareStatement(String.format(SELECT_ENTRIES, table)).executeQuery();
+	public CompletionStage<Map<String, String>> entriesAsync() {
+		return supply(() -> withConnection(statements -> {
+			Map<String, String> entries = new HashMap<>();
+			try (ResultSet resultSet = statements.get(SELECT_ENTRIES).executeQuery()) {
 				while (resultSet.next()) {
 					entries.put(resultSet.getString("_Key"), resultSet.getString("_Value"));
 				}
-				callback.provide(entries);
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
 			}
-		});
+			return entries;
+		}));
 	}
 
+	@Nonnull
 	@Override
-	public void size(@Nonnull DataCallback<Integer> callback) {
-		execute(() -> {
-			try {
-				PreparedStatement stmt = connection.prepareStatement(String.format(COUNT, table));
-				ResultSet resultSet = stmt.executeQuery();
-				if (resultSet.next()) {
-					callback.provide(resultSet.getInt("count"));
+	public Stream<String> streamKeys(int batchSize) {
+		return page(SELECT_KEYS_FIRST, SELECT_KEYS_AFTER, batchSize, resultSet -> resultSet.getString("_Key")).stream();
+	}
+
+	@Nonnull
+	@Override
+	public Stream<Map.Entry<String, String>> streamEntries(int batchSize) {
+		return this.<Map.Entry<String, String>> page(SELECT_ENTRIES_FIRST, SELECT_ENTRIES_AFTER, batchSize, resultSet -> new AbstractMap.SimpleImmutableEntry<>(resultSet.getString("_Key"), resultSet.getString("_Value"))).stream();
+	}
+
+	/**
+	 * Pages through the table ordered by key, running one forward-only query per batch on the executor.
+	 * No cursor is held open between batches, so the connection goes back to the pool in between.
+	 */
+	<T> BatchIterator<T> page(String firstQuery, String nextQuery, int batchSize, RowMapper<T> mapper) {
+		return new BatchIterator<T>() {
+			String lastKey;
+			boolean done;
+
+			@Override
+			protected Collection<T> nextBatch() {
+				if (done) { return null; }
+				return supply(() -> withConnection(statements -> {
+					PreparedStatement stmt = statements.get(lastKey == null ? firstQuery : nextQuery);
+					stmt.setFetchSize(batchSize);
+					int i = 1;
+					if (lastKey != null) {
+						stmt.setString(i++, lastKey);
+					}
+					stmt.setInt(i, batchSize);
+					List<T> batch = new ArrayList<>();
+					try (ResultSet resultSet = stmt.executeQuery()) {
+						while (resultSet.next()) {
+							batch.add(mapper.map(resultSet));
+							lastKey = resultSet.getString("_Key");
+						}
+					}
+					done = batch.size() < batchSize;
+					return batch;
+				})).join();
+			}
+		};
+	}
+
+	interface RowMapper<T> {
+		T map(ResultSet resultSet) throws SQLException;
+	}
+
+	@Nonnull
+	@Override
+	public CompletionStage<Integer> sizeAsync() {
+		return supply(() -> withConnection(statements -> {
+			try (ResultSet resultSet = statements.get(COUNT).executeQuery()) {
+				return resultSet.next() ? resultSet.getInt("count") : 0;
+			}
+		}));
+	}
+
+	void insert(StatementCache statements, String key, String value) throws SQLException {
+		PreparedStatement stmt = statements.get(INSERT_OR_REPLACE);
+		stmt.setString(1, key);
+		stmt.setString(2, value);
+		stmt.executeUpdate();
+	}
+
+	/**
+	 * Writes the map as parameterized batches of {@link #getBatchSize()} rows in a single transaction
+	 */
+	void insertAll(StatementCache statements, Map<String, String> map) throws SQLException {
+		if (map.isEmpty()) { return; }
+		Connection connection = statements.getConnection();
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		PreparedStatement stmt = statements.get(INSERT_OR_REPLACE);
+		try {
+			int count = 0;
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				stmt.setString(1, entry.getKey());
+				stmt.setString(2, entry.getValue());
+				stmt.addBatch();
+				if (++count % batchSize == 0) {
+					stmt.executeBatch();
 				}
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
 			}
-		});
+			if (count % batchSize != 0) {
+				stmt.executeBatch();
+			}
+			connection.commit();
+		} catch (SQLException | RuntimeException e) {
+			stmt.clearBatch();
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	String select(StatementCache statements, String key) throws SQLException {
+		PreparedStatement stmt = statements.get(SELECT_VALUE_WHERE_KEY);
+		stmt.setString(1, key);
+		try (ResultSet resultSet = stmt.executeQuery()) {
+			if (resultSet.next()) {
+				return resultSet.getString("_Value");
+			}
+			return null;
+		}
+	}
+
+	Map<String, String> selectAll(StatementCache statements, List<String> keys) throws SQLException {
+		Map<String, String> map = new HashMap<>();
+		for (int offset = 0; offset < keys.size(); offset += SELECT_IN_CHUNK_SIZE) {
+			List<String> chunk = keys.subList(offset, Math.min(keys.size(), offset + SELECT_IN_CHUNK_SIZE));
+			String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+			// The placeholder count varies, so these are not cached
+			try (PreparedStatement stmt = statements.getConnection().prepareStatement(String.format(SELECT_VALUES_IN, table, placeholders))) {
+				for (int i = 0; i < chunk.size(); i++) {
+					stmt.setString(i + 1, chunk.get(i));
+				}
+				try (ResultSet resultSet = stmt.executeQuery()) {
+					while (resultSet.next()) {
+						map.put(resultSet.getString("_Key"), resultSet.getString("_Value"));
+					}
+				}
+			}
+		}
+		return map;
+	}
+
+	void delete(StatementCache statements, String key) throws SQLException {
+		PreparedStatement stmt = statements.get(DELETE_WHERE_KEY);
+		stmt.setString(1, key);
+		stmt.executeUpdate();
 	}
 }
@@ -0,0 +1,95 @@
+package org.inventivetalent.data.test;
+
+import org.inventivetalent.data.async.BoundedExecutor;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class BoundedExecutorTest {
+
+	@Test
+	public void rejectTest() throws InterruptedException {
+		AtomicInteger rejected = new AtomicInteger();
+		BoundedExecutor executor = new BoundedExecutor(1, BoundedExecutor.OverflowPolicy.REJECT, e -> rejected.incrementAndGet());
+		CountDownLatch blocker = block(executor);
+
+		executor.execute(() -> {
+		});
+		assertEquals(executor.getQueueDepth(), 1);
+		try {
+			executor.execute(() -> {
+			});
+			fail("Expected the task to be rejected");
+		} catch (RejectedExecutionException expected) {
+		}
+		assertEquals(rejected.get(), 1);
+
+		blocker.countDown();
+		executor.shutdown();
+	}
+
+	@Test
+	public void coalesceTest() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(2, BoundedExecutor.OverflowPolicy.COALESCE);
+		CountDownLatch blocker = block(executor);
+
+		List<String> written = Collections.synchronizedList(new ArrayList<>());
+		CompletableFuture<Void> first = executor.write("foo", () -> written.add("foo=1"));
+		executor.write("bar", () -> written.add("bar=1"));
+		CompletableFuture<Void> second = executor.write("foo", () -> written.add("foo=2"));
+		assertEquals(executor.getQueueDepth(), 2);
+
+		blocker.countDown();
+		second.get(10, TimeUnit.SECONDS);
+		assertTrue(first.isDone());
+		assertEquals(written, List.of("foo=2", "bar=1"));
+		executor.shutdown();
+	}
+
+	@Test
+	public void coalesceOrderTest() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(2, BoundedExecutor.OverflowPolicy.COALESCE);
+		CountDownLatch blocker = block(executor);
+
+		Map<String, String> map = new ConcurrentHashMap<>();
+		executor.write("foo", () -> map.put("foo", "1"));
+		executor.execute("foo", () -> map.remove("foo"));
+		assertEquals(executor.getRemainingCapacity(), 0);
+		// Must not replace the first put, which would run it before the remove
+		CompletableFuture<Void> put = CompletableFuture.runAsync(() -> executor.write("foo", () -> map.put("foo", "2")));
+
+		blocker.countDown();
+		put.get(10, TimeUnit.SECONDS);
+		executor.write("bar", () -> {
+		}).get(10, TimeUnit.SECONDS);
+		assertEquals(map.get("foo"), "2");
+		executor.shutdown();
+	}
+
+	CountDownLatch block(BoundedExecutor executor) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch blocker = new CountDownLatch(1);
+		executor.execute(() -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		started.await();
+		return blocker;
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.inventivetalent.data.test;
+
+import com.google.common.cache.CacheBuilder;
+import org.inventivetalent.data.file.FileDataProvider;
+import org.inventivetalent.data.mapper.AsyncCacheMapper;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+public class CacheTest {
+
+	@Test
+	public void staleLoadTest() throws Exception {
+		Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		File dir = new File("cacheTest");
+		dir.mkdir();
+		FileDataProvider provider = new FileDataProvider(tasks::add, dir);
+		AsyncCacheMapper.CachedDataProvider<String> cache = AsyncCacheMapper.create(provider);
+
+		provider.putAsync("stale", "old");
+		runAll(tasks);
+
+		// The load reads the old value, but only completes after the key was removed
+		CompletionStage<String> load = cache.getAsync("stale");
+		cache.removeAsync("stale");
+		tasks.poll().run();
+		assertEquals(load.toCompletableFuture().get(10, TimeUnit.SECONDS), "old");
+		runAll(tasks);
+
+		assertNull(cache.get("stale"));
+		assertFalse(cache.contains("stale"));
+	}
+
+	@Test
+	public void callbackFailureTest() {
+		File dir = new File("cacheTest");
+		dir.mkdir();
+		FileDataProvider provider = new FileDataProvider(runnable -> {
+			throw new RejectedExecutionException("full");
+		}, dir);
+		AsyncCacheMapper.CachedDataProvider<String> cache = AsyncCacheMapper.create(provider, CacheBuilder.newBuilder(), Runnable::run);
+
+		Thread thread = Thread.currentThread();
+		Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		AtomicReference<Throwable> reported = new AtomicReference<>();
+		thread.setUncaughtExceptionHandler((t, throwable) -> reported.set(throwable));
+		try {
+			cache.get("failing", value -> fail("Callback called for a failed load"));
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+		assertTrue(reported.get() instanceof CompletionException);
+		assertTrue(reported.get().getCause() instanceof RejectedExecutionException);
+	}
+
+	void runAll(Queue<Runnable> tasks) {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+}
@@ -3,17 +3,27 @@ package org.inventivetalent.data.test;
 import org.inventivetalent.data.async.AsyncDataProvider;
 import org.inventivetalent.data.async.DataCallable;
 import org.inventivetalent.data.file.FileDataProvider;
+import org.inventivetalent.data.file.FileWatcher;
 import org.inventivetalent.data.mapper.AsyncCacheMapper;
 import org.inventivetalent.data.mapper.AsyncStringValueMapper;
 import org.testng.annotations.Test;
 
 import javax.annotation.Nonnull;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertNotNull;
-import static org.testng.Assert.assertNull;
+import static org.testng.Assert.*;
 
 public class FileTest extends AbstractKeyValueTest {
 
@@ -61,6 +71,245 @@ public class FileTest extends AbstractKeyValueTest {
 		latch.await();
 	}
 
+	@Test(dependsOnMethods = { "putTest" })
+	public void streamTest() {
+		try (Stream<Map.Entry<String, String>> stream = provider.streamEntries(3)) {
+			Map<String, String> entries = stream.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+			for (int i = 0; i < keys.size(); i++) {
+				assertEquals(entries.get(keys.get(i)), values.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void futureTest() throws Exception {
+		String value = provider.putAsync("future", "bar")//
+				.thenCompose(v -> provider.getAsync("future"))//
+				.toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(value, "bar");
+
+		assertTrue(provider.containsAsync("future").toCompletableFuture().get(10, TimeUnit.SECONDS));
+		assertEquals(provider.removeAsync("future").toCompletableFuture().get(10, TimeUnit.SECONDS), "bar");
+		assertFalse(provider.containsAsync("future").toCompletableFuture().get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void putRemovePutTest() throws Exception {
+		File dir = new File("filePutRemovePutTest");
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		FileDataProvider provider = new FileDataProvider(dir);
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			provider.put("key" + i, "first");
+			provider.remove("key" + i);
+			futures.add(provider.putAsync("key" + i, "second").toCompletableFuture());
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+		assertEquals(provider.size(), 200);
+		assertEquals(dir.list().length, 200);
+		assertEquals(provider.get("key100"), "second");
+	}
+
+	@Test
+	public void missingTest() throws Exception {
+		assertNull(provider.get("missing"));
+		assertNull(provider.getAsync("missing").toCompletableFuture().get(10, TimeUnit.SECONDS));
+		assertFalse(provider.contains("missing"));
+		assertFalse(new File("fileTest", "missing").exists());
+	}
+
+	@Test
+	public void readTest() throws Exception {
+		String multiline = "first line\nsecond line \u00e4\r\n\nlast";
+		provider.putAsync("multiline", multiline).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(provider.get("multiline"), multiline);
+
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			builder.append(i).append('\n');
+		}
+		String large = builder.toString();
+		FileDataProvider asyncReads = new FileDataProvider(new File("fileTest")).setAsyncReads(true);
+		asyncReads.putAsync("large", large).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(asyncReads.getAsync("multiline").toCompletableFuture().get(10, TimeUnit.SECONDS), multiline);
+		assertEquals(asyncReads.getAsync("large").toCompletableFuture().get(10, TimeUnit.SECONDS), large);
+		assertEquals(asyncReads.removeAsync("large").toCompletableFuture().get(10, TimeUnit.SECONDS), large);
+	}
+
+	@Test
+	public void shardedTest() throws Exception {
+		File dir = new File("fileShardedTest");
+		FileDataProvider sharded = new FileDataProvider(dir).setSharded(true);
+		String[] unsafeKeys = { "plain", "a/b", "../up", ".hidden", "with space", "\u00fcn\u00efc\u00f6d\u00e9", "100%" };
+		for (String key : unsafeKeys) {
+			sharded.removeAsync(key).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		}
+		int size = sharded.size();
+
+		for (String key : unsafeKeys) {
+			sharded.putAsync(key, "value of " + key.length()).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(sharded.size(), size + unsafeKeys.length);
+		assertFalse(new File(dir.getParentFile(), "up").exists());
+
+		FileDataProvider reopened = new FileDataProvider(dir).setSharded(true);
+		assertEquals(reopened.size(), size + unsafeKeys.length);
+		for (String key : unsafeKeys) {
+			assertTrue(reopened.contains(key));
+			assertEquals(reopened.get(key), "value of " + key.length());
+		}
+		assertTrue(reopened.keys().containsAll(Arrays.asList(unsafeKeys)));
+
+		assertEquals(reopened.getAndRemove("a/b"), "value of 3");
+		assertFalse(reopened.contains("a/b"));
+		assertEquals(reopened.size(), size + unsafeKeys.length - 1);
+	}
+
+	@Test
+	public void durableTest() throws Exception {
+		File dir = new File("fileDurableTest");
+		dir.mkdir();
+		FileDataProvider durable = new FileDataProvider(dir).setDurable(true);
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i++) {
+			futures.add(durable.putAsync(keys.get(i), values.get(i)).toCompletableFuture());
+		}
+		// Reads see the pending write before it is committed
+		durable.putAsync("durable", "first");
+		assertEquals(durable.getAsync("durable").toCompletableFuture().get(10, TimeUnit.SECONDS), "first");
+		durable.putAsync("durable", "second").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+		FileDataProvider reopened = new FileDataProvider(dir);
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(reopened.get(keys.get(i)), values.get(i));
+		}
+		assertEquals(reopened.get("durable"), "second");
+		assertFalse(reopened.keys().stream().anyMatch(key -> key.contains("~")));
+
+		// A removed pending write must not be moved into place afterwards
+		CompletionStage<Void> removed = durable.putAsync("removed", "value");
+		assertEquals(durable.removeAsync("removed").toCompletableFuture().get(10, TimeUnit.SECONDS), "value");
+		removed.toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertFalse(new File(dir, "removed").exists());
+		assertFalse(durable.contains("removed"));
+
+		durable.setDurable(false);
+		assertEquals(dir.listFiles((d, name) -> name.endsWith("~tmp")).length, 0);
+	}
+
+	@Test
+	public void commitFailureTest() throws Exception {
+		File dir = new File("fileCommitFailureTest");
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				File[] children = file.listFiles();
+				if (children != null) {
+					for (File child : children) {
+						child.delete();
+					}
+				}
+				file.delete();
+			}
+		}
+		// A non-empty directory can't be replaced by the move
+		File blocked = new File(dir, "blocked");
+		blocked.mkdirs();
+		new File(blocked, "file").createNewFile();
+		FileDataProvider durable = new FileDataProvider(dir).setCommitInterval(50).setDurable(true);
+
+		CompletableFuture<Void> failing = durable.putAsync("blocked", "value").toCompletableFuture();
+		CompletableFuture<Void> committed = durable.putAsync("committed", "value").toCompletableFuture();
+		committed.get(10, TimeUnit.SECONDS);
+		assertEquals(new FileDataProvider(dir).get("committed"), "value");
+		try {
+			failing.get(10, TimeUnit.SECONDS);
+			fail("Expected the commit to fail");
+		} catch (ExecutionException expected) {
+		}
+		// Kept until it is on disk, and retried without further writes
+		assertEquals(durable.get("blocked"), "value");
+		new File(blocked, "file").delete();
+		blocked.delete();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!blocked.isFile() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(new FileDataProvider(dir).get("blocked"), "value");
+
+		// Dropped when closed before it could be committed
+		File stuck = new File(dir, "stuck");
+		stuck.mkdirs();
+		new File(stuck, "file").createNewFile();
+		try {
+			durable.putAsync("stuck", "value").toCompletableFuture().get(10, TimeUnit.SECONDS);
+			fail("Expected the commit to fail");
+		} catch (ExecutionException expected) {
+		}
+		durable.setDurable(false);
+		assertEquals(dir.listFiles((d, name) -> name.endsWith("~tmp")).length, 0);
+	}
+
+	@Test
+	public void parallelEntriesTest() throws Exception {
+		File dir = new File("fileParallelTest");
+		dir.mkdir();
+		FileDataProvider parallel = new FileDataProvider(dir).setSharded(true).setParallelism(4);
+		Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			map.put("key" + i, "value" + i);
+		}
+		parallel.putAllAsync(map).toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		Map<String, String> entries = parallel.entries();
+		assertEquals(entries.size(), parallel.size());
+		assertTrue(entries.entrySet().containsAll(map.entrySet()));
+		assertEquals(parallel.entriesAsync().toCompletableFuture().get(10, TimeUnit.SECONDS), entries);
+
+		CountDownLatch latch = new CountDownLatch(1);
+		parallel.entries(loaded -> {
+			assertEquals(loaded, entries);
+			latch.countDown();
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void watchTest() throws Exception {
+		File dir = new File("fileWatchTest");
+		FileDataProvider local = new FileDataProvider(dir).setSharded(true);
+		// Another process sharing the directory
+		FileDataProvider remote = new FileDataProvider(dir).setSharded(true);
+		remote.removeAsync("external").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		remote.putAsync("shared", "first").toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		AsyncCacheMapper.CachedDataProvider<String> cache = AsyncCacheMapper.create(AsyncStringValueMapper.file(local)).subscribe(local.watch());
+		assertEquals(cache.getAsync("shared").toCompletableFuture().get(10, TimeUnit.SECONDS), "first");
+		assertFalse(local.contains("external"));
+
+		CountDownLatch invalidated = new CountDownLatch(1);
+		CountDownLatch created = new CountDownLatch(1);
+		local.watch().addListener(change -> {
+			if ("shared".equals(change.getKey())) { invalidated.countDown(); }
+			if ("external".equals(change.getKey()) && change.getKind() == FileWatcher.Kind.CREATED) { created.countDown(); }
+		});
+		remote.putAsync("shared", "second").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		remote.putAsync("external", "value").toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		assertTrue(invalidated.await(10, TimeUnit.SECONDS));
+		assertEquals(cache.getAsync("shared").toCompletableFuture().get(10, TimeUnit.SECONDS), "second");
+		assertTrue(created.await(10, TimeUnit.SECONDS));
+		assertTrue(local.contains("external"));
+		local.watch().close();
+	}
+
 	@Test
 	public void stringMapperTest() throws InterruptedException {
 		AsyncDataProvider<String> stringProvider = AsyncStringValueMapper.file(this.provider);
@@ -99,7 +348,9 @@ public class FileTest extends AbstractKeyValueTest {
 	}
 
 	@Test
-	public void cacheTest() throws InterruptedException {
+	public void cacheTest() throws Exception {
+		// Missing keys are read as null, so write it before loading it
+		this.provider.putAsync("foo", "bar").toCompletableFuture().get(10, TimeUnit.SECONDS);
 		AsyncCacheMapper.CachedDataProvider<String> cache = AsyncCacheMapper.create(AsyncStringValueMapper.file(this.provider));
 
 		assertNull(cache.get("foo"));// Should be null before it's cached
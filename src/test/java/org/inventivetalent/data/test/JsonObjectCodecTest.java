@@ -0,0 +1,57 @@
+package org.inventivetalent.data.test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.inventivetalent.data.mongodb.DocumentParser;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.testng.Assert.*;
+
+public class JsonObjectCodecTest {
+
+	@Test
+	public void roundTripTest() {
+		JsonObject original = new JsonParser().parse("{\"name\":\"foo\",\"count\":42,\"big\":12345678901,\"ratio\":0.5,\"enabled\":true,\"missing\":null,"
+				+ "\"tags\":[\"a\",\"b\",1],\"nested\":{\"deep\":{\"value\":\"bar\"}}}").getAsJsonObject();
+
+		Document document = DocumentParser.toDocument(original);
+		assertEquals(document.get("count"), 42);
+		assertEquals(document.get("big"), 12345678901L);
+		assertEquals(document.get("ratio"), 0.5);
+		assertEquals(document.get("tags"), Arrays.asList("a", "b", 1));
+		assertEquals(document.get("nested", Document.class).get("deep", Document.class).getString("value"), "bar");
+
+		assertEquals(DocumentParser.toJson(document), original);
+	}
+
+	@Test
+	public void extendedTypesTest() {
+		ObjectId id = new ObjectId();
+		Document document = new Document("_id", id)
+				.append("date", new Date(1600000000000L))
+				.append("decimal", Decimal128.parse("1.25"));
+
+		JsonObject json = DocumentParser.toJson(document);
+		assertEquals(json.getAsJsonObject("_id").get("$oid").getAsString(), id.toHexString());
+		assertEquals(json.getAsJsonObject("date").get("$date").getAsString(), "2020-09-13T12:26:40Z");
+		assertEquals(json.getAsJsonObject("decimal").get("$numberDecimal").getAsString(), "1.25");
+
+		assertEquals(DocumentParser.toDocument(json), document);
+	}
+
+	@Test
+	public void registryTest() {
+		JsonObject value = new JsonParser().parse("{\"foo\":\"bar\",\"count\":1}").getAsJsonObject();
+		BsonDocument update = new Document("$set", value).toBsonDocument(Document.class, DocumentParser.CODEC_REGISTRY);
+		assertEquals(update.getDocument("$set").getString("foo").getValue(), "bar");
+		assertEquals(update.getDocument("$set").getInt32("count").getValue(), 1);
+	}
+
+}
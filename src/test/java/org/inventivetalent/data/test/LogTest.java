@@ -0,0 +1,164 @@
+package org.inventivetalent.data.test;
+
+import org.inventivetalent.data.async.BoundedExecutor;
+import org.inventivetalent.data.file.LogDataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class LogTest extends AbstractKeyValueTest {
+
+	File newDir(String name) {
+		File dir = new File("logTest", name);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		return dir;
+	}
+
+	void await(LogDataProvider provider) throws Exception {
+		provider.acknowledge().toCompletableFuture().get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void putGetTest() throws Exception {
+		LogDataProvider provider = new LogDataProvider(newDir("putGet"));
+		for (int i = 0; i < keys.size(); i++) {
+			provider.putAsync(keys.get(i), values.get(i)).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(provider.get(keys.get(i)), values.get(i));
+		}
+		assertEquals(provider.size(), keys.size());
+
+		provider.putAsync("multi", "line\nvalue").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(provider.get("multi"), "line\nvalue");
+		assertEquals(provider.removeAsync("multi").toCompletableFuture().get(10, TimeUnit.SECONDS), "line\nvalue");
+		assertFalse(provider.contains("multi"));
+		assertNull(provider.get("multi"));
+	}
+
+	@Test
+	public void reopenTest() throws Exception {
+		File dir = newDir("reopen");
+		LogDataProvider provider = new LogDataProvider(dir).setSegmentSize(256);
+		Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			map.put("key" + i, "value" + i);
+		}
+		provider.putAllAsync(map).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		provider.putAsync("key1", "changed").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		provider.removeAsync("key2").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertTrue(provider.getSegmentCount() > 1);
+		provider.close().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		LogDataProvider reopened = new LogDataProvider(dir);
+		assertEquals(reopened.size(), 99);
+		assertEquals(reopened.get("key1"), "changed");
+		assertNull(reopened.get("key2"));
+		assertEquals(reopened.get("key99"), "value99");
+		reopened.close().toCompletableFuture().get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void restartTest() throws Exception {
+		File dir = newDir("restart");
+		LogDataProvider provider = new LogDataProvider(dir);
+		provider.putAsync("foo", "bar").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		provider.close().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		LogDataProvider reopened = new LogDataProvider(dir);
+		int segments = reopened.getSegmentCount();
+		reopened.close().toCompletableFuture().get(10, TimeUnit.SECONDS);
+		// The empty active segment is reused instead of adding another one
+		LogDataProvider restarted = new LogDataProvider(dir);
+		assertEquals(restarted.getSegmentCount(), segments);
+		restarted.putAsync("foo1", "bar1").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		await(restarted);
+
+		// Not closed, so the reused segment must be scanned again
+		LogDataProvider recovered = new LogDataProvider(dir);
+		assertEquals(recovered.get("foo"), "bar");
+		assertEquals(recovered.get("foo1"), "bar1");
+	}
+
+	@Test
+	public void recoveryTest() throws Exception {
+		File dir = newDir("recovery");
+		LogDataProvider provider = new LogDataProvider(dir);
+		provider.putAsync("foo", "bar").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		provider.putAsync("foo1", "bar1").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		await(provider);
+
+		// Not closed, and the last record was only partially written
+		File segment = new File(dir, "0000000001.data");
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.setLength(file.length() - 2);
+		} catch (IOException e) {
+			fail("Failed to truncate segment", e);
+		}
+
+		LogDataProvider recovered = new LogDataProvider(dir);
+		assertEquals(recovered.get("foo"), "bar");
+		assertFalse(recovered.contains("foo1"));
+		recovered.putAsync("foo1", "bar2").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(recovered.get("foo1"), "bar2");
+	}
+
+	@Test
+	public void compactionTest() throws Exception {
+		File dir = newDir("compaction");
+		LogDataProvider provider = new LogDataProvider(dir).setSegmentSize(512);
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 20; i++) {
+				provider.putAsync("key" + i, "value" + i + "-" + round).toCompletableFuture().get(10, TimeUnit.SECONDS);
+			}
+		}
+		provider.removeAsync("key0").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		int segments = provider.getSegmentCount();
+		assertTrue(provider.getGarbageRatio() > 0.5);
+
+		provider.compact().toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertTrue(provider.getSegmentCount() < segments);
+		assertEquals(provider.size(), 19);
+		for (int i = 1; i < 20; i++) {
+			assertEquals(provider.get("key" + i), "value" + i + "-9");
+		}
+		assertNull(provider.get("key0"));
+		await(provider);
+
+		LogDataProvider reopened = new LogDataProvider(dir);
+		assertEquals(reopened.entries().size(), 19);
+		assertEquals(reopened.get("key5"), "value5-9");
+		assertNull(reopened.get("key0"));
+	}
+
+	@Test
+	public void fullQueueRollTest() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(1, BoundedExecutor.OverflowPolicy.BLOCK);
+		LogDataProvider provider = new LogDataProvider(executor, newDir("fullQueueRoll")).setSegmentSize(256).setCompactionThreshold(0.5);
+		// Rolling segments with a full queue must not wait for a slot in the queue the roll itself is holding up
+		CompletableFuture<Void> writes = CompletableFuture.runAsync(() -> {
+			for (int i = 0; i < 200; i++) {
+				provider.putAsync("key" + (i % 10), "value" + i);
+			}
+		});
+		writes.get(10, TimeUnit.SECONDS);
+		provider.putAsync("last", "value").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(provider.get("key9"), "value199");
+		assertEquals(provider.size(), 11);
+		executor.shutdown();
+	}
+
+}
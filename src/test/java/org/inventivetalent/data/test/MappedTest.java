@@ -0,0 +1,90 @@
+package org.inventivetalent.data.test;
+
+import org.inventivetalent.data.file.MappedDataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class MappedTest extends AbstractKeyValueTest {
+
+	File newDir(String name) {
+		File dir = new File("mappedTest", name);
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		return dir;
+	}
+
+	@Test
+	public void putGetTest() throws Exception {
+		MappedDataProvider provider = new MappedDataProvider(newDir("putGet"));
+		for (int i = 0; i < keys.size(); i++) {
+			provider.putAsync(keys.get(i), values.get(i)).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(provider.get(keys.get(i)), values.get(i));
+		}
+		assertEquals(provider.size(), keys.size());
+
+		provider.putAsync("multi", "line\nvalue \u00e4").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(provider.get("multi"), "line\nvalue \u00e4");
+		assertEquals(provider.removeAsync("multi").toCompletableFuture().get(10, TimeUnit.SECONDS), "line\nvalue \u00e4");
+		assertFalse(provider.containsAsync("multi").toCompletableFuture().get(10, TimeUnit.SECONDS));
+		assertNull(provider.get("multi"));
+	}
+
+	@Test
+	public void growthTest() throws Exception {
+		File dir = newDir("growth");
+		MappedDataProvider provider = new MappedDataProvider(dir);
+		Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < 10000; i++) {
+			map.put("key" + i, "value" + i);
+		}
+		provider.putAllAsync(map).toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertTrue(provider.getCapacity() > MappedDataProvider.DEFAULT_CAPACITY);
+		assertEquals(provider.size(), 10000);
+		assertEquals(provider.entries(), map);
+		provider.flush().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		MappedDataProvider reopened = new MappedDataProvider(dir);
+		assertEquals(reopened.size(), 10000);
+		assertEquals(reopened.get("key1234"), "value1234");
+	}
+
+	@Test
+	public void rebuildTest() throws Exception {
+		File dir = newDir("rebuild");
+		MappedDataProvider provider = new MappedDataProvider(dir);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			builder.append('x');
+		}
+		String padding = builder.toString();
+		// Overwrites a few keys until the arena is mostly garbage
+		for (int round = 0; round < 50; round++) {
+			for (int i = 0; i < 100; i++) {
+				provider.putAsync("key" + i, round + padding).toCompletableFuture().get(10, TimeUnit.SECONDS);
+			}
+			provider.removeAsync("key0").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		}
+		assertTrue(provider.getArenaSize() < 4 * 1024 * 1024);
+		assertEquals(provider.size(), 99);
+		assertEquals(provider.get("key50"), "49" + padding);
+		provider.flush().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+		MappedDataProvider reopened = new MappedDataProvider(dir);
+		assertEquals(reopened.size(), 99);
+		assertNull(reopened.get("key0"));
+		assertEquals(reopened.get("key99"), "49" + padding);
+	}
+
+}
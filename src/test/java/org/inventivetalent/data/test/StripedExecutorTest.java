@@ -0,0 +1,79 @@
+package org.inventivetalent.data.test;
+
+import org.inventivetalent.data.async.StripedExecutor;
+import org.inventivetalent.data.file.FileDataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class StripedExecutorTest {
+
+	@Test
+	public void orderTest() throws InterruptedException {
+		StripedExecutor executor = new StripedExecutor(4);
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch latch = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			final int finalI = i;
+			executor.execute("foo", () -> {
+				order.add(finalI);
+				latch.countDown();
+			});
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			assertEquals((int) order.get(i), i);
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void laneTest() {
+		StripedExecutor executor = new StripedExecutor(4);
+		assertEquals(executor.getLaneCount(), 4);
+		assertSame(executor.getLane("foo"), executor.getLane("foo"));
+		executor.shutdown();
+	}
+
+	@Test
+	public void providerTest() throws Exception {
+		File dir = new File("stripedTest");
+		dir.mkdir();
+		StripedExecutor executor = new StripedExecutor(4);
+		FileDataProvider provider = new FileDataProvider(executor, dir);
+
+		for (int i = 0; i < 10; i++) {
+			provider.put("foo", String.valueOf(i));
+		}
+		assertEquals(provider.getAsync("foo").toCompletableFuture().get(10, TimeUnit.SECONDS), "9");
+		executor.shutdown();
+	}
+
+	@Test
+	public void barrierTest() throws Exception {
+		StripedExecutor executor = new StripedExecutor(4);
+		File dir = new File("stripedTest", "barrier");
+		dir.mkdirs();
+		FileDataProvider provider = new FileDataProvider(executor, dir);
+
+		for (int i = 0; i < 100; i++) {
+			provider.put("key" + i, "first");
+			// Keyless, but must still run after the put and before the next one
+			provider.putAllAsync(Collections.singletonMap("key" + i, "second"));
+			provider.put("other" + i, "value");
+		}
+		provider.acknowledge().toCompletableFuture().get(10, TimeUnit.SECONDS);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(provider.get("key" + i), "second");
+		}
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.inventivetalent.data.test;
+
+import org.inventivetalent.data.async.BoundedExecutor;
+import org.inventivetalent.data.async.StripedExecutor;
+import org.inventivetalent.data.file.FileDataProvider;
+import org.inventivetalent.data.mapper.MapMapper;
+import org.inventivetalent.data.mapper.WriteBehindMapper;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class WriteBehindTest {
+
+	@Test
+	public void coalesceTest() throws Exception {
+		Map<String, String> backing = new HashMap<>();
+		WriteBehindMapper.WriteBehindDataProvider<String> provider = WriteBehindMapper.create(MapMapper.async(backing), 100, 1, TimeUnit.HOURS);
+
+		for (int i = 0; i < 10; i++) {
+			provider.put("foo", String.valueOf(i));
+		}
+		assertTrue(backing.isEmpty());
+		assertEquals(provider.getPendingCount(), 1);
+		assertEquals(provider.getAsync("foo").toCompletableFuture().get(10, TimeUnit.SECONDS), "9");
+
+		provider.flush().toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(backing.get("foo"), "9");
+		assertEquals(provider.getPendingCount(), 0);
+		provider.close();
+	}
+
+	@Test
+	public void failedFlushTest() throws Exception {
+		File parent = new File("writeBehindTest");
+		parent.mkdir();
+		File notADirectory = new File(parent, "file");
+		notADirectory.createNewFile();
+		Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		// Writes fail since the directory can't be created
+		FileDataProvider failing = new FileDataProvider(tasks::add, new File(notADirectory, "dir")).setSharded(true);
+		WriteBehindMapper.WriteBehindDataProvider<String> provider = WriteBehindMapper.create(failing, 100, 1, TimeUnit.HOURS);
+
+		provider.put("foo", "bar");
+		provider.put("kept", "value");
+		CompletableFuture<Void> flushed = provider.flush().toCompletableFuture();
+		provider.remove("foo");
+		// The provider is called from another thread
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!flushed.isDone() && System.currentTimeMillis() < deadline) {
+			Runnable task = tasks.poll();
+			if (task != null) {
+				task.run();
+			}
+		}
+
+		assertTrue(flushed.isCompletedExceptionally());
+		// The removed key must not be written by the next flush
+		assertEquals(provider.getPendingCount(), 1);
+		assertEquals(provider.getAsync("kept").toCompletableFuture().get(10, TimeUnit.SECONDS), "value");
+		provider.close();
+	}
+
+	@Test
+	public void sizeTriggerTest() throws Exception {
+		Map<String, String> backing = new HashMap<>();
+		WriteBehindMapper.WriteBehindDataProvider<String> provider = WriteBehindMapper.create(MapMapper.async(backing), 5, 1, TimeUnit.HOURS);
+
+		for (int i = 0; i < 4; i++) {
+			provider.put("foo" + i, "bar");
+		}
+		provider.putAsync("foo4", "bar").toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(backing.size(), 5);
+		provider.close();
+	}
+
+	@Test
+	public void fullQueueTest() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(1, BoundedExecutor.OverflowPolicy.BLOCK);
+		File dir = new File("writeBehindTest", "fullQueue");
+		dir.mkdirs();
+		WriteBehindMapper.WriteBehindDataProvider<String> provider = WriteBehindMapper.create(new FileDataProvider(executor, dir), 100, 1, TimeUnit.HOURS);
+		CountDownLatch blocker = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		executor.execute(() -> {
+		});
+
+		// Neither may wait for the full queue, or for each other
+		provider.put("foo", "bar");
+		CompletableFuture<Void> flushed = CompletableFuture.runAsync(provider::flush);
+		CompletableFuture<Void> removed = CompletableFuture.runAsync(() -> provider.remove("foo"));
+		flushed.get(10, TimeUnit.SECONDS);
+		removed.get(10, TimeUnit.SECONDS);
+
+		blocker.countDown();
+		provider.put("other", "value");
+		provider.flush().toCompletableFuture().get(10, TimeUnit.SECONDS);
+		assertEquals(provider.keysAsync().toCompletableFuture().get(10, TimeUnit.SECONDS), List.of("other"));
+		provider.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void removeOrderTest() throws Exception {
+		File dir = new File("writeBehindTest", "removeOrder");
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		FileDataProvider striped = new FileDataProvider(new StripedExecutor(4), dir);
+		dir.mkdirs();
+		WriteBehindMapper.WriteBehindDataProvider<String> provider = WriteBehindMapper.create(striped, 100, 1, TimeUnit.HOURS);
+
+		List<CompletableFuture<String>> removes = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			provider.put("key" + i, "value");
+			provider.flush();
+			// Must not run before the batch still writing the key
+			removes.add(provider.removeAsync("key" + i).toCompletableFuture());
+		}
+		for (CompletableFuture<String> remove : removes) {
+			assertEquals(remove.get(10, TimeUnit.SECONDS), "value");
+		}
+		assertEquals(striped.size(), 0);
+		assertEquals(dir.list().length, 0);
+		provider.close();
+	}
+
+}